@@ -5,8 +5,10 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
+import android.os.Build;
 import android.view.View;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -16,28 +18,195 @@ import java.io.InputStream;
 public class Base {
 
     /**
-     * Get Bitmap from assets folder, on a given path, using bitmap
-     * factory for decoding
+     * Get Bitmap from assets folder, on a given path, the bitmap is
+     * decoded once and then returned from the shared bitmap cache. The
+     * returned bitmap is owned by the cache and must not be recycled
      * @param context
      * @param path
      * @return
      */
     public static Bitmap getBitmapFromAssets(Context context, String path) {
+        return getBitmapFromAssets(context, path, 0, 0);
+    }
+
+    /**
+     * Get Bitmap from assets folder, on a given path, resized to the given
+     * width and height, the bitmap is decoded and resized once and then
+     * returned from the shared bitmap cache. The returned bitmap is owned
+     * by the cache and must not be recycled. The config is the one from
+     * preferredConfig() for transparent images drawn on software canvas
+     * @param context
+     * @param path
+     * @param width target width, or 0 for the original size
+     * @param height target height, or 0 for the original size
+     * @return
+     */
+    public static Bitmap getBitmapFromAssets(Context context, String path, int width, int height) {
+        return getBitmapFromAssets(context, path, width, height, preferredConfig(true, true));
+    }
+
+    /**
+     * Get Bitmap from assets folder, on a given path, decoded straight to the
+     * given width and height with the given config, the bitmap is decoded once
+     * and then returned from the shared bitmap cache. The returned bitmap is
+     * owned by the cache and must not be recycled, it is null when the asset
+     * can not be read or decoded
+     * @param context
+     * @param path
+     * @param width target width, or 0 for the original size
+     * @param height target height, or 0 for the original size
+     * @param config preferred config, see preferredConfig()
+     * @return
+     */
+    public static Bitmap getBitmapFromAssets(Context context, String path, int width, int height,
+                                             Bitmap.Config config) {
+
+        BitmapCache cache = BitmapCache.getInstance();
+        String key = BitmapCache.key(path, width, height) + config;
+        Bitmap bitmap = cache.getBitmap(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        try {
+            bitmap = decodeBitmapFromAssets(context, path, width, height, config);
+        } catch (IOException e) {
+            return null;
+        }
+        cache.putBitmap(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Decode Bitmap from assets folder, on a given path, at its original size
+     * and without caching it, see decodeBitmapFromAssets(context, path, width, height, config)
+     * @param context
+     * @param path
+     * @return
+     * @throws IOException if the asset can not be read or decoded
+     */
+    public static Bitmap decodeBitmapFromAssets(Context context, String path) throws IOException {
+        return decodeBitmapFromAssets(context, path, 0, 0, preferredConfig(true, true));
+    }
+
+    /**
+     * Decode Bitmap from assets folder, on a given path, without caching it.
+     * The bounds are read first, so the image is subsampled by the largest
+     * power of two that keeps it at least as big as the target size, and then
+     * scaled the rest of the way while decoding, so there is no full size
+     * bitmap and no extra copy. The aspect ratio is kept, so the bitmap fits
+     * inside the target width and height, and has exactly that size when the
+     * target has the same aspect ratio as the image. When the cache has a reuse
+     * pool, memory of a bitmap given back using BitmapCache.release() is reused
+     * when possible, the caller owns the returned bitmap and should give it back
+     * the same way when it is no longer needed
+     * @param context
+     * @param path
+     * @param width target width, or 0 for the original size
+     * @param height target height, or 0 for the original size
+     * @param config preferred config, see preferredConfig()
+     * @return
+     * @throws IOException if the asset can not be read or decoded
+     */
+    public static Bitmap decodeBitmapFromAssets(Context context, String path, int width, int height,
+                                                Bitmap.Config config) throws IOException {
 
-        InputStream stream = null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        InputStream stream = context.getAssets().open(path);
         try {
-            stream = context.getAssets().open(path);
-            return BitmapFactory.decodeStream(stream);
-        } catch (Exception ignored) {
+            // read the size first, without allocating the pixels
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(stream, null, options);
         } finally {
-            try {
-                if (stream != null) {
-                    stream.close();
-                }
-            } catch (Exception ignored) {
+            stream.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Could not decode bounds of " + path);
+        }
+
+        int decodedWidth = options.outWidth;
+        int decodedHeight = options.outHeight;
+        if (width > 0 && height > 0) {
+            options.inSampleSize = sampleSize(decodedWidth, decodedHeight, width, height);
+            decodedWidth = options.outWidth / options.inSampleSize;
+            decodedHeight = options.outHeight / options.inSampleSize;
+
+            // scale the rest of the way while decoding, by the side that fits the target first
+            boolean isWidthLimited = (long) width * decodedHeight <= (long) height * decodedWidth;
+            int decodedSide = isWidthLimited ? decodedWidth : decodedHeight;
+            int targetSide = isWidthLimited ? width : height;
+            if (decodedSide != targetSide) {
+                options.inScaled = true;
+                options.inDensity = decodedSide;
+                options.inTargetDensity = targetSide;
+                decodedWidth = (int) ((long) decodedWidth * targetSide / decodedSide);
+                decodedHeight = (int) ((long) decodedHeight * targetSide / decodedSide);
             }
         }
-        return null;
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = config;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || config != Bitmap.Config.HARDWARE) {
+            BitmapCache.getInstance().setReusable(options, decodedWidth, decodedHeight);
+        }
+
+        Bitmap bitmap;
+        stream = context.getAssets().open(path);
+        try {
+            bitmap = BitmapFactory.decodeStream(stream, null, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+
+            // the reused bitmap can not hold the image, decode it to new memory
+            options.inBitmap.recycle();
+            return decodeBitmapFromAssets(context, path, width, height, config);
+        } finally {
+            stream.close();
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + path);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the largest power of two sample size, that keeps the decoded
+     * image at least as big as the target size
+     * @param width image width
+     * @param height image height
+     * @param targetWidth target width
+     * @param targetHeight target height
+     * @return
+     */
+    public static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Get the config that uses the least memory for a bitmap. HARDWARE bitmaps
+     * (API 26+) are stored only in graphics memory, but they can be drawn only
+     * on hardware accelerated canvas and their pixels can not be read, RGB_565
+     * uses half the memory of ARGB_8888, but it has no alpha channel.
+     * @param hasAlpha whether the image has transparent pixels
+     * @param software whether the bitmap is drawn on software canvas (for example
+     *                 from SurfaceHolder.lockCanvas()) or its pixels are read
+     * @return
+     */
+    public static Bitmap.Config preferredConfig(boolean hasAlpha, boolean software) {
+
+        if (!software && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return Bitmap.Config.HARDWARE;
+        } else if (!hasAlpha) {
+            return Bitmap.Config.RGB_565;
+        }
+        return Bitmap.Config.ARGB_8888;
     }
 
     /**
@@ -62,10 +231,9 @@ public class Base {
         matrix.postScale(scaleWidth, scaleHeight);
 
         // "RECREATE" THE NEW BITMAP
-        Bitmap resizedBitmap = Bitmap.createBitmap(
+        // the input is not given back to the cache, it is usually a cached bitmap still in use
+        return Bitmap.createBitmap(
                 bitmap, 0, 0, width, height, matrix, false);
-        bitmap.recycle();
-        return resizedBitmap;
     }
 
 
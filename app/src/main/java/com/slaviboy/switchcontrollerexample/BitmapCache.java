@@ -0,0 +1,253 @@
+package com.slaviboy.switchcontrollerexample;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * BitmapCache Class(Java)
+ * Shared memory cache for decoded bitmaps and packed sprite atlases, keyed by the
+ * asset path and target size. The least recently used entries are evicted when
+ * the total byte size reaches the memory budget. Bitmaps owned by the caller, for
+ * example decoded with Base.decodeBitmapFromAssets(), can be given back using
+ * release() when they are no longer needed, they are kept in a small bounded pool
+ * and reused as BitmapFactory.Options.inBitmap by the next decode, instead of
+ * allocating new memory. Bitmaps returned by the cache are owned by it and are
+ * never pooled while they are cached, since the next decode would overwrite
+ * their pixels. Bitmaps evicted from the cache go to the pool, so a bitmap
+ * from getBitmap() should be used only while it is still cached.
+ */
+public class BitmapCache {
+
+    // default budget is 1/8 of the maximum heap size
+    public static final int DEFAULT_BUDGET = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+
+    private static BitmapCache instance;            // shared cache instance
+
+    private LruCache<String, Object> cache;         // cached bitmaps and atlases
+    private IdentityHashMap<Bitmap, Integer> cached; // number of cache entries holding each bitmap, directly or as atlas bitmap
+    private ArrayList<Bitmap> pool;                 // bitmaps that can be reused for decoding
+    private int poolSize;                           // byte size of the bitmaps in the pool
+    private int maxPoolSize;                        // maximum byte size of the bitmaps in the pool
+    private boolean isClearing;                     // whether clear() is evicting the entries, that are not pooled
+
+    public BitmapCache(int budget) {
+        this(budget, budget / 4);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param budget     maximum byte size of the cached entries
+     * @param poolBudget maximum byte size of the bitmaps kept for reuse, 0 disables
+     *                   the reuse, so the decoded bitmaps are not forced to be mutable
+     */
+    public BitmapCache(int budget, int poolBudget) {
+        cache = new LruCache<String, Object>(budget) {
+            @Override
+            protected int sizeOf(String key, Object value) {
+                return byteSizeOf(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Object oldValue, Object newValue) {
+                onEntryRemoved(evicted, oldValue);
+            }
+        };
+        cached = new IdentityHashMap<>();
+        pool = new ArrayList<>();
+        maxPoolSize = poolBudget;
+    }
+
+    /**
+     * Get the shared cache, created with the default budget on the first call,
+     * unless configure() was called before that
+     *
+     * @return the shared cache
+     */
+    public static synchronized BitmapCache getInstance() {
+        if (instance == null) {
+            instance = new BitmapCache(DEFAULT_BUDGET);
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the shared cache with a new one, using the given memory budget
+     *
+     * @param budget maximum byte size of the cached entries
+     */
+    public static synchronized void configure(int budget) {
+        configure(budget, budget / 4);
+    }
+
+    /**
+     * Replace the shared cache with a new one, using the given memory budgets
+     *
+     * @param budget     maximum byte size of the cached entries
+     * @param poolBudget maximum byte size of the bitmaps kept for reuse, 0 disables the reuse
+     */
+    public static synchronized void configure(int budget, int poolBudget) {
+        if (instance != null) {
+            instance.clear();
+        }
+        instance = new BitmapCache(budget, poolBudget);
+    }
+
+    /**
+     * Create key for an asset decoded to a given size
+     *
+     * @param path   asset path
+     * @param width  target width, or 0 for the original size
+     * @param height target height, or 0 for the original size
+     * @return the key
+     */
+    public static String key(String path, int width, int height) {
+        return path + "@" + width + "x" + height;
+    }
+
+    public Bitmap getBitmap(String key) {
+        Object value = cache.get(key);
+        return (value instanceof Bitmap) ? (Bitmap) value : null;
+    }
+
+    public synchronized void putBitmap(String key, Bitmap bitmap) {
+        addCached(bitmap);
+        cache.put(key, bitmap);
+    }
+
+    public SpriteAtlas getAtlas(String key) {
+        Object value = cache.get(key);
+        return (value instanceof SpriteAtlas) ? (SpriteAtlas) value : null;
+    }
+
+    public synchronized void putAtlas(String key, SpriteAtlas atlas) {
+        addCached(atlas.getBitmap());
+        cache.put(key, atlas);
+    }
+
+    private void addCached(Bitmap bitmap) {
+        Integer count = cached.get(bitmap);
+        cached.put(bitmap, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * Called by the cache when entry is evicted, replaced or removed, evicted
+     * bitmaps that are no longer held by other entries are given to the pool
+     *
+     * @param evicted  whether the entry was evicted to make space
+     * @param oldValue removed bitmap or atlas
+     */
+    private synchronized void onEntryRemoved(boolean evicted, Object oldValue) {
+
+        Bitmap bitmap = (oldValue instanceof SpriteAtlas) ? ((SpriteAtlas) oldValue).getBitmap() : (Bitmap) oldValue;
+        Integer count = cached.get(bitmap);
+        if (count != null && count > 1) {
+            cached.put(bitmap, count - 1);
+            return;
+        }
+        cached.remove(bitmap);
+
+        // atlases are kept by the sprites that draw them, so only plain bitmaps are reused
+        if (evicted && !isClearing && oldValue instanceof Bitmap) {
+            release(bitmap);
+        }
+    }
+
+    /**
+     * Give back bitmap that is owned by the caller and no longer used, it is kept
+     * for reuse if it is mutable and the pool is not full, otherwise it is recycled.
+     * Bitmaps that are stored in the cache are ignored, they are still referenced
+     * by the cache and by anyone who got them from it.
+     *
+     * @param bitmap bitmap owned by the caller, that is no longer used
+     */
+    public synchronized void release(Bitmap bitmap) {
+
+        if (bitmap.isRecycled() || isCached(bitmap)) {
+            return;
+        }
+
+        int size = bitmap.getAllocationByteCount();
+        if (bitmap.isMutable() && !bitmap.isRecycled() && poolSize + size <= maxPoolSize) {
+            pool.add(bitmap);
+            poolSize += size;
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Check whether bitmap is stored in the cache, directly or as atlas bitmap
+     *
+     * @param bitmap the bitmap
+     * @return whether it is cached
+     */
+    private boolean isCached(Bitmap bitmap) {
+        return cached.containsKey(bitmap);
+    }
+
+    /**
+     * Set bitmap from the pool as inBitmap, if there is one big enough for the
+     * decoded image. The decoded bitmap is made mutable only when the reuse is
+     * enabled, so it can be given back to the pool later
+     *
+     * @param options options with inPreferredConfig set
+     * @param width   width of the decoded bitmap
+     * @param height  height of the decoded bitmap
+     */
+    public synchronized void setReusable(BitmapFactory.Options options, int width, int height) {
+
+        if (maxPoolSize <= 0) {
+            return;
+        }
+        options.inMutable = true;
+        int bytesPerPixel = (options.inPreferredConfig == Bitmap.Config.RGB_565) ? 2 : 4;
+        int required = width * height * bytesPerPixel;
+
+        for (int i = 0; i < pool.size(); i++) {
+            Bitmap bitmap = pool.get(i);
+            if (bitmap.getAllocationByteCount() >= required) {
+                pool.remove(i);
+                poolSize -= bitmap.getAllocationByteCount();
+                options.inBitmap = bitmap;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove all entries from the cache and the pool
+     */
+    public synchronized void clear() {
+        isClearing = true;
+        cache.evictAll();
+        isClearing = false;
+        cached.clear();
+        for (Bitmap bitmap : pool) {
+            bitmap.recycle();
+        }
+        pool.clear();
+        poolSize = 0;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    private static int byteSizeOf(Object value) {
+        if (value instanceof Bitmap) {
+            return ((Bitmap) value).getAllocationByteCount();
+        } else if (value instanceof SpriteAtlas) {
+            return ((SpriteAtlas) value).getByteCount();
+        }
+        return 0;
+    }
+}
@@ -4,11 +4,18 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
-import com.slaviboy.switchcontroller.SwitchController;
+import com.slaviboy.switchcontroller.engine.ControllerState;
 
 
 /**
@@ -33,10 +40,20 @@ import com.slaviboy.switchcontroller.SwitchController;
  *
  *  CanvasView Class(Java)
  *  Class that is used to draw penguin object and uses
- *  thread to redraw the scene
+ *  thread to redraw the scene. Frames are scheduled with
+ *  Choreographer on the render thread, so the scene is drawn
+ *  at most once per vsync (or at the target frame rate), and
+ *  frames are skipped while nothing changes on the scene.
  */
-public class CanvasView extends SurfaceView implements Runnable,
-        SwitchController.ControllerListener {
+public class CanvasView extends SurfaceView implements Choreographer.FrameCallback {
+
+    private static final String TAG = "CanvasView";
+
+    // whether the penguin frames are loaded in parallel, without blocking the first frame
+    private static final boolean LOAD_ASYNC = true;
+
+    // frames that come earlier than this before the target frame time are still drawn
+    private static final long FRAME_TOLERANCE_NANOS = 2000000;
 
     public CanvasView(Context context) {
         super(context);
@@ -61,79 +78,306 @@ public class CanvasView extends SurfaceView implements Runnable,
 
     private SurfaceHolder surfaceHolder;  // holder for the SurfaceView
 
-    private Thread thread;                // thread object
-    private boolean isRunning = true;     // if thread is running
+    private HandlerThread thread;         // render thread, with looper for the frame callbacks
+    private Handler handler;              // handler for the render thread
+    private volatile boolean isRunning;   // if thread is running
 
     private Penguin penguin;              // penguin object
+    private Paint paint;                  // paint used for drawing the penguin
+
+    private volatile int actorCount;      // number of actors drawn with the penguin atlas, that follow the controller
+    private SpriteBatch actors;           // batch with the actors, created when the penguin atlas is loaded
+
+    private ControllerState controllerState;       // switch controller state, written on the UI thread
+    private ControllerState.Snapshot controller;   // copy of the controller state, read on the render thread
 
-    private int direction;                // switch controller current direction
-    private double angle;                 // switch controller current angle
-    private double distance;              // switch controller current distance
+    private volatile long frameIntervalNanos;      // minimum time between frames, 0 to draw on every vsync
+    private long lastFrameTimeNanos;               // vsync time of the last drawn frame
+    private int drawnVersion;                      // version of the controller state in the last drawn frame
+    private boolean isDrawnReady;                  // whether the penguin was ready in the last drawn frame
+    private volatile boolean isInvalidated;        // whether the next frame should be drawn even if nothing changed
+    private int skippedFrames;                     // number of idle frames that were not drawn
+
+    private volatile boolean useHardwareCanvas;    // whether hardware canvas is used instead of software canvas
+    private Rect dirty;                            // area that is redrawn in the current frame
+    private Rect drawnBounds;                      // penguin bounds in the last drawn frame
+    private Rect penguinBounds;                    // penguin bounds in the current frame
+
+    private long startTime;                        // start time of the render thread
+    private boolean isFirstFrameDrawn;             // whether the first frame with the penguin is drawn
 
     private void init(Context context) {
         surfaceHolder = this.getHolder();
+        controller = new ControllerState.Snapshot();
+        dirty = new Rect();
+        drawnBounds = new Rect();
+        penguinBounds = new Rect();
+
+        // the surface content is lost when it is recreated or resized, so redraw it
+        surfaceHolder.addCallback(new SurfaceHolder.Callback() {
+            @Override
+            public void surfaceCreated(SurfaceHolder holder) {
+                invalidateScene();
+            }
+
+            @Override
+            public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+                invalidateScene();
+            }
+
+            @Override
+            public void surfaceDestroyed(SurfaceHolder holder) {
+            }
+        });
     }
 
-    @Override
-    public void run() {
+    /**
+     * Set the target frame rate, frames are drawn on the first vsync after
+     * the frame interval has passed
+     * @param fps target frames per second, or 0 to draw on every vsync
+     */
+    public void setTargetFps(int fps) {
+        frameIntervalNanos = (fps > 0) ? 1000000000L / fps : 0;
+    }
+
+    /**
+     * Set number of actors, that share the penguin atlas and are driven by the
+     * switch controller together with the penguin, they are drawn as one batch
+     * @param actorCount number of actors, or 0 to draw only the penguin
+     */
+    public void setActorCount(int actorCount) {
+        this.actorCount = actorCount;
+        isInvalidated = true;
+    }
 
-        penguin = new Penguin(getContext(), "Slaviboy", 0, 0, Color.BLUE, 1);
+    /**
+     * Get number of frames that were skipped, since the scene did not change
+     * @return
+     */
+    public int getSkippedFrameCount() {
+        return skippedFrames;
+    }
+
+    /**
+     * Draw the next frame, even if the scene did not change
+     */
+    public void invalidateScene() {
+        isInvalidated = true;
+    }
+
+    /**
+     * Initialize the scene on the render thread, and request the first frame
+     */
+    private void startRendering() {
+
+        // time to first frame is measured from the start of the thread, to the first frame with the penguin
+        startTime = SystemClock.uptimeMillis();
+        isFirstFrameDrawn = false;
 
-        Paint paint = new Paint();
+        penguin = new Penguin(getContext(), "Slaviboy", 0, 0, Color.BLUE, 1, LOAD_ASYNC);
+        actors = null;
+
+        paint = new Paint();
         paint.setAntiAlias(true);
 
-        Canvas canvas;
-        while (isRunning) {
+        drawnVersion = -1;
+        isDrawnReady = false;
+        lastFrameTimeNanos = 0;
+        isInvalidated = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
 
-            canvas = null;
-            try {
-                canvas = surfaceHolder.lockCanvas();
+    @Override
+    public void doFrame(long frameTimeNanos) {
 
-                synchronized (surfaceHolder) {
-                    if (canvas != null) {
+        if (!isRunning) {
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
 
-                        canvas.drawColor(Color.WHITE);
-                        penguin.updatePosition(direction, angle, distance, getWidth(), getHeight());
-                        penguin.updateFrame(System.currentTimeMillis());
-                        penguin.draw(canvas, paint);
-                    }
-                }
+        // wait for the target frame time
+        if (frameTimeNanos - lastFrameTimeNanos < frameIntervalNanos - FRAME_TOLERANCE_NANOS) {
+            return;
+        }
+
+        if (controllerState != null) {
+            controllerState.read(controller);
+        }
+
+        // skip idle frames, when the controller and the penguin did not change since the last frame
+        boolean isReady = penguin.isReady();
+        if (!isInvalidated && controller.version == drawnVersion && isReady == isDrawnReady &&
+                controller.magnitude == 0 && !penguin.isAnimating()) {
+            skippedFrames++;
+            return;
+        }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
+        if (!surfaceHolder.getSurface().isValid()) {
+            return;
+        }
+
+        penguin.updatePosition(controller.sector, controller.analogX, controller.analogY, controller.magnitude, getWidth(), getHeight());
+        penguin.updateFrame(System.currentTimeMillis());
+        updateActors();
+
+        // area that is redrawn, the old and the new penguin bounds or the whole surface
+        boolean isHardware = useHardwareCanvas;
+        boolean isFullFrame = isInvalidated || isHardware || actors != null;
+        penguin.getBounds(penguinBounds);
+        if (isFullFrame) {
+            dirty.set(0, 0, getWidth(), getHeight());
+        } else {
+            dirty.set(drawnBounds);
+            dirty.union(penguinBounds);
+        }
+
+        Canvas canvas = null;
+        try {
+            canvas = lockCanvas(dirty, isHardware);
+
+            synchronized (surfaceHolder) {
                 if (canvas != null) {
-                    surfaceHolder.unlockCanvasAndPost(canvas);
+
+                    // the canvas is clipped to the dirty rect, that may be bigger than the requested one
+                    canvas.drawColor(Color.WHITE);
+                    if (actors != null) {
+                        actors.draw(canvas, paint);
+                    }
+                    penguin.draw(canvas, paint);
+
+                    lastFrameTimeNanos = frameTimeNanos;
+                    drawnVersion = controller.version;
+                    isDrawnReady = isReady;
+                    isInvalidated = false;
+                    drawnBounds.set(penguinBounds);
+
+                    if (!isFirstFrameDrawn && isReady) {
+                        isFirstFrameDrawn = true;
+                        Log.d(TAG, "Time to first frame: " + (SystemClock.uptimeMillis() - startTime) +
+                                " ms, async: " + LOAD_ASYNC);
+                    }
+                } else {
+                    // the penguin moved without being drawn, so the old bounds are unknown
+                    isInvalidated = true;
                 }
             }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (canvas != null) {
+                unlockCanvasAndPost(canvas, isHardware);
+            }
         }
     }
 
+    /**
+     * Create the actors batch when the penguin atlas is ready, and move the
+     * actors the same way as the penguin, using its state and frame
+     */
+    private void updateActors() {
 
-    @Override
-    public void onDirectionChange(int id, int direction, int action) {
-        this.direction = direction;
+        int count = actorCount;
+        SpriteAtlas atlas = penguin.getAtlas();
+        if (count == 0 || atlas == null) {
+            actors = null;
+            return;
+        }
+
+        int maxX = getWidth() - penguin.getWidth();
+        int maxY = getHeight() - penguin.getHeight();
+        if (actors == null || actors.getCapacity() != count) {
+            actors = new SpriteBatch(count, Penguin.FRAMES_COUNT, penguin.getReframeTime());
+            actors.setAtlas(atlas);
+            actors.fill(Math.max(maxX, 1), Math.max(maxY, 1), 4, 12, count);
+        }
+
+        // the analog axes are published by the controller, and are 0 inside the dead zone and when it is released
+        int column = (controller.magnitude == 0) ? penguin.getFrame() : -1;
+        actors.update(penguin.getState(), column, controller.analogX, controller.analogY, maxX, maxY, System.currentTimeMillis());
     }
 
-    @Override
-    public void onMove(int id, double angle, double distance) {
-        this.angle = angle;
-        this.distance = distance;
+    /**
+     * Lock the surface canvas, using hardware canvas when it is enabled and supported,
+     * otherwise software canvas, that is clipped to the dirty rect
+     * @param dirty area that will be redrawn, it is updated with the area that has to be redrawn
+     * @param isHardware whether to lock hardware canvas
+     * @return the canvas or null if the surface is not ready
+     */
+    private Canvas lockCanvas(Rect dirty, boolean isHardware) {
+        if (isHardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return surfaceHolder.lockHardwareCanvas();
+        } else if (isHardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+
+            // before API 26 the holder has no hardware canvas, so lock the surface directly
+            return surfaceHolder.getSurface().lockHardwareCanvas();
+        }
+
+        // software canvas, also when hardware canvas is not supported
+        return surfaceHolder.lockCanvas(dirty);
+    }
+
+    private void unlockCanvasAndPost(Canvas canvas, boolean isHardware) {
+        if (isHardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            surfaceHolder.getSurface().unlockCanvasAndPost(canvas);
+        } else {
+            surfaceHolder.unlockCanvasAndPost(canvas);
+        }
+    }
+
+    /**
+     * Use hardware accelerated canvas for drawing, supported on API 23+. The hardware
+     * canvas redraws the whole surface on every frame, while the software canvas redraws
+     * only the area the penguin moved through.
+     * @param useHardwareCanvas whether to use hardware canvas
+     * @return whether hardware canvas is used, false if it is not supported
+     */
+    public boolean setHardwareCanvas(boolean useHardwareCanvas) {
+        this.useHardwareCanvas = useHardwareCanvas && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+        isInvalidated = true;
+        return this.useHardwareCanvas;
+    }
+
+    public boolean isHardwareCanvas() {
+        return useHardwareCanvas;
+    }
+
+
+    /**
+     * Set the switch controller state, that is polled on each vsync
+     * @param controllerState
+     */
+    public void setControllerState(ControllerState controllerState) {
+        this.controllerState = controllerState;
     }
 
     private void startThread() {
         if (thread == null) {
             isRunning = true;
-            thread = new Thread(this); // set runnable, to new thread
+            thread = new HandlerThread("CanvasView");
             thread.start();
+            handler = new Handler(thread.getLooper());
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startRendering();
+                }
+            });
         }
     }
 
     private void stopThread() {
         if (thread != null) {
             isRunning = false;
-            thread.interrupt();
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Choreographer.getInstance().removeFrameCallback(CanvasView.this);
+                }
+            });
+            thread.quitSafely();
             thread = null;
+            handler = null;
         }
     }
 
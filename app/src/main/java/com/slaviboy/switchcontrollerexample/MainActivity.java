@@ -8,11 +8,18 @@ import android.os.Bundle;
 import android.view.View;
 
 import com.slaviboy.switchcontroller.SwitchController;
+import com.slaviboy.switchcontroller.engine.DeadZone;
+import com.slaviboy.switchcontroller.engine.InputPipeline;
+import com.slaviboy.switchcontroller.engine.OneEuroFilter;
+import com.slaviboy.switchcontroller.engine.ResponseCurve;
 
 import static com.slaviboy.switchcontrollerexample.Base.hideSystemUI;
 
 public class MainActivity extends AppCompatActivity implements View.OnClickListener {
 
+    // dead zone as part of the background radius, shared by the direction and the analog axes
+    static final float DEAD_ZONE = 0.1f;
+
     CanvasView canvasView;
     SwitchController switchController;
 
@@ -27,9 +34,13 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         // switch controller
         switchController = findViewById(R.id.controller);
-        switchController.setControllerListner(canvasView);
         switchController.setOnClickListener(this);
-        switchController.setControllerListner(canvasView);
+        switchController.setDirectionWays(4, 0, DEAD_ZONE);
+        switchController.setInputPipeline(new InputPipeline(
+                new DeadZone(DeadZone.RADIAL, DEAD_ZONE, 0.9f),
+                ResponseCurve.exponential(2),
+                new OneEuroFilter()));
+        canvasView.setControllerState(switchController.getState());
         //createSwitch();
     }
 
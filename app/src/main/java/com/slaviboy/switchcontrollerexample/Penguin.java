@@ -6,8 +6,10 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.util.Log;
+
+import java.io.IOException;
 
-import com.slaviboy.switchcontroller.SwitchController;
 
 
 /**
@@ -38,30 +40,49 @@ import com.slaviboy.switchcontroller.SwitchController;
 
 public class Penguin {
 
+    private static final String TAG = "Penguin";
+
     public static final int STATE_STILL = 0;
     public static final int STATE_MOVE = 1;
 
+    // number of states and frames for each state
+    public static final int STATES_COUNT = 9;
+    public static final int FRAMES_COUNT = 8;
+
     private float x;               // penguin x position
     private float y;               // penguin y position
     private int width;             // penguin width
     private int height;            // penguin height
     private int color;             // penguin color
 
+    // transparent border around the name label, for the anti aliased edges
+    private static final int LABEL_PADDING = 1;
+
     private String name;           // penguin name
     private Rect nameBound;        // name text bound - width, height
 
     private Typeface typeface;     // typeface for penguin name
     private int fontSize;          // font size
+    private Paint textPaint;       // paint owned by the penguin, used only for rendering the name label
+    private Bitmap label;          // name rendered once, and drawn as bitmap on each frame
+    private volatile boolean isLabelChanged; // whether the label should be rendered again, before the next draw
 
-    private Bitmap[][] images;     // bitmap images with the penguin
+    private volatile SpriteAtlas atlas;     // atlas with all penguin frames
+    private volatile SpriteAtlas idleAtlas; // atlas with the still state frames, used until all frames are loaded
+    private SpriteLoader loader;            // loader, when the frames are loaded asynchronously
 
     private int stateIndex;        // state index showing current penguin state
     private int frameIndex;        // current frame
     private int reframeTime;       // change frame every -speed ms
     private long lastTime;         // last system time a frame is changed
-    private double speed;          // penguin moving speed
+    private double speed;          // penguin moving speed at full controller magnitude, in px per frame
 
     public Penguin(Context context, String name, int x, int y, int color, double sizePercentage) {
+        this(context, name, x, y, color, sizePercentage, false);
+    }
+
+    public Penguin(Context context, String name, int x, int y, int color, double sizePercentage,
+                   boolean loadAsync) {
 
         this.name = name;
         this.x = x;
@@ -71,37 +92,122 @@ public class Penguin {
 
         reframeTime = 41; // 1000ms/24frame = 41 ms/f
         stateIndex = 1;
+        speed = 8;
 
         // set bitmap size
         width = (int) (270 * sizePercentage);
         height = (int) (300 * sizePercentage);
 
-        loadImages(context, "images/penguin/blue/");
+        if (loadAsync) {
+            loadImagesAsync(context, "images/penguin/blue/");
+        } else {
+            loadImages(context, "images/penguin/blue/");
+        }
 
         fontSize = (int) ((double) width / 5);
         typeface = Typeface.DEFAULT; // Typeface.createFromAsset(context.getAssets(), "fonts/BurbankBigRegular-Medium.otf");
-        nameBound = measureText(name);
+        textPaint = new Paint();
+        textPaint.setAntiAlias(true);
+        nameBound = new Rect();
+        updateLabel();
     }
 
     /**
-     * Load all penguin images from assets folder to a 2-dimensional
-     * bitmap array, first index correspond to -stateIndex, second
-     * index is for -frameIndex
+     * Load all penguin images from assets folder, decoded straight to the
+     * penguin size, and pack them into a single atlas, the frame index in
+     * the atlas is (stateIndex * FRAMES_COUNT + frameIndex). If a frame
+     * can not be decoded the penguin stays not ready.
      *
      * @param context
      * @param url
      */
     public void loadImages(Context context, String url) {
-
-        images = new Bitmap[9][8];
-        for (int i = 0; i < images.length; i++) {
-            for (int j = 0; j < images[0].length; j++) {
-                Bitmap temp = Base.getBitmapFromAssets(context, url + i + "/" + j + ".png");
-                images[i][j] = temp; //resizedBitmap(temp, width, height);
-            }
+        try {
+            atlas = SpriteAtlas.fromAssets(context, url, STATES_COUNT, FRAMES_COUNT, width, height);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load penguin images", e);
         }
     }
 
+    /**
+     * Load all penguin images in parallel, without blocking the caller. The
+     * still state frames are loaded first, so the penguin can be drawn
+     * before the moving states are ready.
+     *
+     * @param context
+     * @param url
+     * @return the loader, with futures for the atlases
+     */
+    public SpriteLoader loadImagesAsync(Context context, String url) {
+
+        loader = SpriteLoader.load(context, url, STATES_COUNT, FRAMES_COUNT, width, height, STATE_STILL,
+                new SpriteLoader.Listener() {
+                    @Override
+                    public void onPriorityAtlasReady(SpriteAtlas atlas) {
+                        idleAtlas = atlas;
+                    }
+
+                    @Override
+                    public void onAtlasReady(SpriteAtlas atlas) {
+                        Penguin.this.atlas = atlas;
+                        idleAtlas = null;
+                    }
+                });
+        return loader;
+    }
+
+    /**
+     * Whether the penguin frames are ready to be drawn, at least the still state
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return atlas != null || idleAtlas != null;
+    }
+
+    /**
+     * Whether the penguin is in a state with animation, and its
+     * frame changes over time
+     *
+     * @return
+     */
+    public boolean isAnimating() {
+        return stateIndex != STATE_STILL;
+    }
+
+    /**
+     * Get atlas with all frames, or null if it is not loaded yet
+     *
+     * @return
+     */
+    public SpriteAtlas getAtlas() {
+        return atlas;
+    }
+
+    public int getState() {
+        return stateIndex;
+    }
+
+    public int getFrame() {
+        return frameIndex;
+    }
+
+    public int getReframeTime() {
+        return reframeTime;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public SpriteLoader getLoader() {
+        return loader;
+    }
+
     /**
      * Update frame index, the range is between [0,7],
      * update is needed for the states with animations
@@ -121,54 +227,38 @@ public class Penguin {
             lastTime = currentTime;
 
             frameIndex++;
-            if (frameIndex > 7) {
+            if (frameIndex > FRAMES_COUNT - 1) {
                 frameIndex = 0;
             }
         }
     }
 
     /**
-     * Update penguin position, using the switch controller angle
+     * Update penguin position, using the switch controller sector and the
+     * analog axes from its input pipeline, so the speed follows how far the
+     * knob is moved and there is no trigonometry on each frame. The penguin
+     * walks only while the magnitude is above 0, so it does not walk in place
+     * inside the dead zone of the pipeline.
      *
-     * @param direction
-     * @param angle
-     * @param distance
+     * @param sector     8-way sector, 0 is right and the next follow counterclockwise
+     * @param analogX    x axis in range [-1, 1]
+     * @param analogY    y axis in range [-1, 1] (down is positive)
+     * @param magnitude  magnitude in range [0, 1]
      * @param viewWidth
      * @param viewHeight
      */
-    public void updatePosition(int direction, double angle, double distance,
+    public void updatePosition(int sector, float analogX, float analogY, float magnitude,
                                int viewWidth, int viewHeight) {
 
-        speed = distance / 30;
-        speed = 8;
-
-        // get new state depending on angle
-        int newState = 0;
-        if (angle >= 247.5 && angle < 292.5) {
-            newState = 1;
-        } else if (angle >= 202.5 && angle < 247.5) {
-            newState = 2;
-        } else if (angle >= 157.5 && angle < 202.5) {
-            newState = 3;
-        } else if (angle >= 112.5 && angle < 157.5) {
-            newState = 4;
-        } else if (angle >= 67.5 && angle < 112.5) {
-            newState = 5;
-        } else if (angle >= 22.5 && angle < 67.5) {
-            newState = 6;
-        } else if ((angle >= 337.5 && angle <= 360) || (angle >= 0 && angle < 22.5)) {
-            newState = 7;
-        } else if (angle >= 292.5 && angle < 337.5) {
-            newState = 8;
-        }
+        // get new state depending on the sector
+        int newState = stateForSector(sector);
 
         // if penguin is moving
-        if (direction !=  SwitchController.DIRECTION_CENTER) {
+        if (magnitude > 0) {
 
             // calculate new x,y positions
-            double angleRad = Math.toRadians(angle);
-            double newX = this.x + Math.cos(angleRad) * speed;
-            double newY = this.y - Math.sin(angleRad) * speed;
+            double newX = this.x + analogX * speed;
+            double newY = this.y + analogY * speed;
 
             // move penguin to new -x only if penguin is in canvas bound
             if (newX > 0 && newX < viewWidth - this.width) {
@@ -192,6 +282,17 @@ public class Penguin {
     }
 
 
+    /**
+     * Get the moving state for a switch controller sector, the moving states
+     * start from down (sector 6) and follow clockwise
+     *
+     * @param sector 8-way sector, 0 is right and the next follow counterclockwise
+     * @return moving state in range [1, 8]
+     */
+    public static int stateForSector(int sector) {
+        return ((6 - sector + 8) % 8) + 1;
+    }
+
     public void setFrame(int index) {
         frameIndex = index;
         lastTime = System.currentTimeMillis();
@@ -202,20 +303,69 @@ public class Penguin {
         setFrame(0);
     }
 
+    public void setName(String name) {
+        this.name = name;
+        updateLabel();
+    }
+
+    public void setTypeface(Typeface typeface) {
+        this.typeface = typeface;
+        updateLabel();
+    }
+
+    public void setFontSize(int fontSize) {
+        this.fontSize = fontSize;
+        updateLabel();
+    }
+
+    public String getName() {
+        return name;
+    }
+
     /**
-     * Measure text and return the bound -width and height
-     *
-     * @param text
-     * @return
+     * Measure the name, and render the label again before the next draw
+     */
+    private void updateLabel() {
+        synchronized (textPaint) {
+            textPaint.setTypeface(typeface);
+            textPaint.setTextSize(fontSize);
+            textPaint.getTextBounds(name, 0, name.length(), nameBound);
+        }
+        isLabelChanged = true;
+    }
+
+    /**
+     * Render the name into the label bitmap, the old label is recycled
      */
-    private Rect measureText(String text) {
+    private void renderLabel() {
 
-        Paint paint = new Paint();
-        Rect bounds = new Rect();
-        paint.setTypeface(typeface);
-        paint.setTextSize(fontSize);
-        paint.getTextBounds(text, 0, text.length(), bounds);
-        return bounds;
+        isLabelChanged = false;
+        if (label != null) {
+            label.recycle();
+        }
+
+        synchronized (textPaint) {
+            int labelWidth = Math.max(1, nameBound.width() + 2 * LABEL_PADDING);
+            int labelHeight = Math.max(1, nameBound.height() + 2 * LABEL_PADDING);
+            label = Bitmap.createBitmap(labelWidth, labelHeight, Bitmap.Config.ARGB_8888);
+            new Canvas(label).drawText(name, LABEL_PADDING - nameBound.left, LABEL_PADDING - nameBound.top, textPaint);
+        }
+    }
+
+    /**
+     * Get the area covered by the penguin bitmap and name, with a small
+     * margin for the anti aliased edges
+     *
+     * @param bounds rect where the bounds are set
+     */
+    public void getBounds(Rect bounds) {
+
+        int textLeft = (int) x + (width - nameBound.width()) / 2;
+        int textTop = (int) y + height + 20;
+        bounds.set((int) x, (int) y, (int) x + width, (int) y + height);
+        bounds.union(textLeft + nameBound.left, textTop + nameBound.top,
+                textLeft + nameBound.right, textTop + nameBound.bottom);
+        bounds.inset(-2, -2);
     }
 
     /**
@@ -227,15 +377,21 @@ public class Penguin {
     public void draw(Canvas canvas, Paint paint) {
         //canvas.scale(2, 2);
 
-        // draw bitmap
-        Bitmap bitmap = images[stateIndex][frameIndex];
-        canvas.drawBitmap(bitmap, x, y, paint);
+        // draw frame from the atlas, or the still frame in the same direction until it is loaded
+        SpriteAtlas atlas = this.atlas;
+        SpriteAtlas idleAtlas = this.idleAtlas;
+        if (atlas != null) {
+            atlas.draw(canvas, stateIndex * FRAMES_COUNT + frameIndex, x, y, paint);
+        } else if (idleAtlas != null) {
+            idleAtlas.draw(canvas, (stateIndex == STATE_STILL) ? frameIndex : stateIndex - 1, x, y, paint);
+        }
 
-        // draw text
-        paint.setTextSize(fontSize);
-        paint.setTypeface(typeface);
-        double deltaX = (double) (width - nameBound.width()) / 2;
-        double deltaY = height + 20;
-        canvas.drawText(name, x + (int) deltaX, y + (int) deltaY, paint);
+        // draw the name label, rendered again only when the name, font or size changed
+        if (label == null || isLabelChanged) {
+            renderLabel();
+        }
+        float labelLeft = x + (width - nameBound.width()) / 2 + nameBound.left - LABEL_PADDING;
+        float labelTop = y + height + 20 + nameBound.top - LABEL_PADDING;
+        canvas.drawBitmap(label, (int) labelLeft, (int) labelTop, paint);
     }
 }
@@ -0,0 +1,276 @@
+package com.slaviboy.switchcontrollerexample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.io.IOException;
+
+/**
+ * SpriteAtlas Class(Java)
+ * Single bitmap holding all frames of a sprite, packed row by row with
+ * the transparent borders of each frame trimmed. Drawing a frame is a
+ * blit of its source rect from the one texture, so there are no texture
+ * switches between frames and only one texture upload. The frames are
+ * decoded as ARGB_8888, since they have transparent pixels and their
+ * pixels are read for trimming.
+ */
+public class SpriteAtlas {
+
+    // maximum atlas width, supported as texture size by all devices
+    public static final int MAX_WIDTH = 2048;
+
+    // values stored in the index for each frame
+    private static final int INDEX_LEFT = 0;        // frame left position in the atlas
+    private static final int INDEX_TOP = 1;         // frame top position in the atlas
+    private static final int INDEX_WIDTH = 2;       // trimmed frame width
+    private static final int INDEX_HEIGHT = 3;      // trimmed frame height
+    private static final int INDEX_OFFSET_X = 4;    // x offset of the trimmed frame in the original frame
+    private static final int INDEX_OFFSET_Y = 5;    // y offset of the trimmed frame in the original frame
+    private static final int INDEX_SIZE = 6;
+
+    private Bitmap bitmap;                          // bitmap with all frames
+    private int[] index;                            // frame rects, INDEX_SIZE values for each frame
+    private int frameCount;                         // number of frames
+    private int frameWidth;                         // original (untrimmed) frame width
+    private int frameHeight;                        // original (untrimmed) frame height
+    private Rect src;                               // reused source rect
+    private RectF dst;                              // reused destination rect
+
+    private SpriteAtlas(Bitmap bitmap, int[] index, int frameCount, int frameWidth, int frameHeight) {
+        this.bitmap = bitmap;
+        this.index = index;
+        this.frameCount = frameCount;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        src = new Rect();
+        dst = new RectF();
+    }
+
+    /**
+     * Load frames from the assets folder, on paths {url}{row}/{column}.png and
+     * pack them into a single atlas, frame index is (row * columns + column).
+     * The atlas is kept in the shared bitmap cache, so loading the same frames
+     * again returns the cached atlas without decoding anything.
+     *
+     * @param context
+     * @param url     folder with the frames
+     * @param rows    number of rows (states)
+     * @param columns number of columns (frames per state)
+     * @return the atlas
+     * @throws IOException if a frame can not be read or decoded
+     */
+    public static SpriteAtlas fromAssets(Context context, String url, int rows, int columns) throws IOException {
+        return fromAssets(context, url, rows, columns, 0, 0);
+    }
+
+    /**
+     * Load frames from the assets folder, decoded straight to the given frame
+     * size, and pack them into a single atlas, see fromAssets(context, url, rows, columns)
+     *
+     * @param context
+     * @param url         folder with the frames
+     * @param rows        number of rows (states)
+     * @param columns     number of columns (frames per state)
+     * @param frameWidth  target frame width, or 0 for the original size
+     * @param frameHeight target frame height, or 0 for the original size
+     * @return the atlas
+     * @throws IOException if a frame can not be read or decoded
+     */
+    public static SpriteAtlas fromAssets(Context context, String url, int rows, int columns,
+                                         int frameWidth, int frameHeight) throws IOException {
+
+        BitmapCache cache = BitmapCache.getInstance();
+        String key = key(url, rows, columns, frameWidth, frameHeight);
+        SpriteAtlas atlas = cache.getAtlas(key);
+        if (atlas != null) {
+            return atlas;
+        }
+
+        // the frames have transparent pixels, that are read when they are packed
+        Bitmap.Config config = Base.preferredConfig(true, true);
+        Bitmap[] frames = new Bitmap[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                frames[i * columns + j] = Base.decodeBitmapFromAssets(context, url + i + "/" + j + ".png",
+                        frameWidth, frameHeight, config);
+            }
+        }
+        atlas = pack(frames, true);
+        cache.putAtlas(key, atlas);
+        return atlas;
+    }
+
+    /**
+     * Create the bitmap cache key for atlas with frames loaded from the assets folder
+     *
+     * @param url     folder with the frames
+     * @param rows    number of rows (states)
+     * @param columns     number of columns (frames per state)
+     * @param frameWidth  target frame width, or 0 for the original size
+     * @param frameHeight target frame height, or 0 for the original size
+     * @return the key
+     */
+    public static String key(String url, int rows, int columns, int frameWidth, int frameHeight) {
+        return BitmapCache.key(url, frameWidth, frameHeight) + "#atlas" + rows + "x" + columns;
+    }
+
+    /**
+     * Pack frames with the same size into a single atlas
+     *
+     * @param frames  frames, the index in the array is used as frame index
+     * @param recycle whether to give the frames back to the bitmap cache for reuse, after they are packed
+     * @return the atlas
+     */
+    public static SpriteAtlas pack(Bitmap[] frames, boolean recycle) {
+
+        int frameWidth = frames[0].getWidth();
+        int frameHeight = frames[0].getHeight();
+        int[] index = new int[frames.length * INDEX_SIZE];
+        int[] pixels = new int[frameWidth * frameHeight];
+
+        // trim the frames and place them in rows, starting new row when the atlas width is reached
+        int left = 0;
+        int top = 0;
+        int rowHeight = 0;
+        int atlasWidth = 0;
+        for (int i = 0; i < frames.length; i++) {
+            int offset = i * INDEX_SIZE;
+            trim(frames[i], pixels, index, offset);
+
+            int width = index[offset + INDEX_WIDTH];
+            int height = index[offset + INDEX_HEIGHT];
+            if (left + width > MAX_WIDTH) {
+                left = 0;
+                top += rowHeight;
+                rowHeight = 0;
+            }
+
+            index[offset + INDEX_LEFT] = left;
+            index[offset + INDEX_TOP] = top;
+            left += width;
+            rowHeight = Math.max(rowHeight, height);
+            atlasWidth = Math.max(atlasWidth, left);
+        }
+        int atlasHeight = top + rowHeight;
+
+        // draw the trimmed frames into the atlas
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(atlasWidth, 1), Math.max(atlasHeight, 1), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Rect src = new Rect();
+        Rect dst = new Rect();
+        for (int i = 0; i < frames.length; i++) {
+            int offset = i * INDEX_SIZE;
+            int width = index[offset + INDEX_WIDTH];
+            int height = index[offset + INDEX_HEIGHT];
+            src.set(index[offset + INDEX_OFFSET_X], index[offset + INDEX_OFFSET_Y],
+                    index[offset + INDEX_OFFSET_X] + width, index[offset + INDEX_OFFSET_Y] + height);
+            dst.set(index[offset + INDEX_LEFT], index[offset + INDEX_TOP],
+                    index[offset + INDEX_LEFT] + width, index[offset + INDEX_TOP] + height);
+            canvas.drawBitmap(frames[i], src, dst, null);
+
+            if (recycle) {
+                BitmapCache.getInstance().release(frames[i]);
+            }
+        }
+
+        return new SpriteAtlas(bitmap, index, frames.length, frameWidth, frameHeight);
+    }
+
+    /**
+     * Find the bounds of the non transparent pixels of a frame, and write
+     * them in the index
+     *
+     * @param frame  frame bitmap
+     * @param pixels buffer for the frame pixels
+     * @param index  frame index
+     * @param offset offset in the index for the frame
+     */
+    private static void trim(Bitmap frame, int[] pixels, int[] index, int offset) {
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        frame.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] >>> 24) != 0) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+
+        // fully transparent frame
+        if (maxX < 0) {
+            minX = 0;
+            minY = 0;
+            maxX = -1;
+            maxY = -1;
+        }
+
+        index[offset + INDEX_OFFSET_X] = minX;
+        index[offset + INDEX_OFFSET_Y] = minY;
+        index[offset + INDEX_WIDTH] = maxX - minX + 1;
+        index[offset + INDEX_HEIGHT] = maxY - minY + 1;
+    }
+
+    /**
+     * Draw frame, with its top left corner (of the untrimmed frame) at x, y
+     *
+     * @param canvas
+     * @param frame  frame index
+     * @param x      x position
+     * @param y      y position
+     * @param paint
+     */
+    public void draw(Canvas canvas, int frame, float x, float y, Paint paint) {
+
+        int offset = frame * INDEX_SIZE;
+        int left = index[offset + INDEX_LEFT];
+        int top = index[offset + INDEX_TOP];
+        int width = index[offset + INDEX_WIDTH];
+        int height = index[offset + INDEX_HEIGHT];
+
+        src.set(left, top, left + width, top + height);
+        dst.left = x + index[offset + INDEX_OFFSET_X];
+        dst.top = y + index[offset + INDEX_OFFSET_Y];
+        dst.right = dst.left + width;
+        dst.bottom = dst.top + height;
+        canvas.drawBitmap(bitmap, src, dst, paint);
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Get the memory used by the atlas, that is counted against the bitmap cache budget
+     *
+     * @return size in bytes
+     */
+    public int getByteCount() {
+        return bitmap.getAllocationByteCount() + index.length * 4;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+}
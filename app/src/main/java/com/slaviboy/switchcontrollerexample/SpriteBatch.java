@@ -0,0 +1,172 @@
+package com.slaviboy.switchcontrollerexample;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.Random;
+
+/**
+ * SpriteBatch Class(Java)
+ * Renderer for many entities that share one sprite atlas. The entities are
+ * held in primitive arrays (struct of arrays) instead of one object for
+ * each entity, so updating them is a loop over the arrays without any
+ * allocations, and drawing them is a single pass of drawBitmap calls with
+ * the same atlas bitmap. All entities are driven by the same input, each
+ * with its own speed and animation phase.
+ */
+public class SpriteBatch {
+
+    private SpriteAtlas atlas;          // atlas shared by all entities
+    private int columns;                // number of frames for each state (row) in the atlas
+    private int reframeTime;            // change frame every -reframeTime ms
+    private long lastTime;              // last time the frame counter changed
+    private int frameCounter;           // frame counter shared by all entities
+
+    private int count;                  // number of entities
+    private float[] x;                  // entity x positions
+    private float[] y;                  // entity y positions
+    private float[] speed;              // entity speeds, in px per update
+    private int[] state;                // entity states, row in the atlas
+    private int[] frame;                // entity frames, column in the atlas
+    private int[] phase;                // entity animation phase, added to the shared frame counter
+
+    /**
+     * Constructor
+     *
+     * @param capacity    maximum number of entities
+     * @param columns     number of frames for each state in the atlas
+     * @param reframeTime time between two animation frames in ms
+     */
+    public SpriteBatch(int capacity, int columns, int reframeTime) {
+        this.columns = columns;
+        this.reframeTime = reframeTime;
+        x = new float[capacity];
+        y = new float[capacity];
+        speed = new float[capacity];
+        state = new int[capacity];
+        frame = new int[capacity];
+        phase = new int[capacity];
+    }
+
+    /**
+     * Add entity
+     *
+     * @param x     x position
+     * @param y     y position
+     * @param speed moving speed, in px per update
+     * @param phase animation phase, in frames
+     * @return the entity index, or -1 if the batch is full
+     */
+    public int add(float x, float y, float speed, int phase) {
+
+        if (count == this.x.length) {
+            return -1;
+        }
+        this.x[count] = x;
+        this.y[count] = y;
+        this.speed[count] = speed;
+        this.phase[count] = phase;
+        return count++;
+    }
+
+    /**
+     * Fill the batch with entities at random positions, with random speeds
+     * and animation phases
+     *
+     * @param width    width of the area
+     * @param height   height of the area
+     * @param minSpeed minimum speed, in px per update
+     * @param maxSpeed maximum speed, in px per update
+     * @param seed     seed for the random values
+     */
+    public void fill(int width, int height, float minSpeed, float maxSpeed, long seed) {
+
+        Random random = new Random(seed);
+        while (count < x.length) {
+            add(random.nextFloat() * width, random.nextFloat() * height,
+                    minSpeed + random.nextFloat() * (maxSpeed - minSpeed), random.nextInt(columns));
+        }
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Update all entities, moving them in the same direction each with its
+     * own speed, and keeping them inside the area
+     *
+     * @param row        state (atlas row) for all entities
+     * @param column     fixed frame (atlas column) for all entities, or -1 to animate them
+     * @param directionX x axis of the moving direction in range [-1, 1], scales the speed
+     * @param directionY y axis of the moving direction in range [-1, 1], scales the speed
+     * @param maxX       maximum x position
+     * @param maxY       maximum y position
+     * @param time       current time in ms
+     */
+    public void update(int row, int column, float directionX, float directionY,
+                       float maxX, float maxY, long time) {
+
+        if (time - lastTime > reframeTime) {
+            lastTime = time;
+            frameCounter++;
+        }
+
+        for (int i = 0; i < count; i++) {
+
+            // move only if the new position is inside the area, the same way as Penguin
+            float newX = x[i] + directionX * speed[i];
+            float newY = y[i] + directionY * speed[i];
+            if (newX > 0 && newX < maxX) {
+                x[i] = newX;
+            }
+            if (newY > 0 && newY < maxY) {
+                y[i] = newY;
+            }
+
+            state[i] = row;
+            frame[i] = (column >= 0) ? column : (frameCounter + phase[i]) % columns;
+        }
+    }
+
+    /**
+     * Draw all entities from the atlas
+     *
+     * @param canvas
+     * @param paint
+     */
+    public void draw(Canvas canvas, Paint paint) {
+
+        SpriteAtlas atlas = this.atlas;
+        if (atlas == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            atlas.draw(canvas, state[i] * columns + frame[i], x[i], y[i], paint);
+        }
+    }
+
+    public void setAtlas(SpriteAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    public SpriteAtlas getAtlas() {
+        return atlas;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return x.length;
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+}
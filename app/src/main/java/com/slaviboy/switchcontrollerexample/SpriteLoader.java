@@ -0,0 +1,269 @@
+package com.slaviboy.switchcontrollerexample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SpriteLoader Class(Java)
+ * Loader that decodes sprite frames from the assets folder in parallel, on a
+ * bounded executor shared by all loaders, and packs them into atlases. The
+ * frames of one priority row (for example the idle state) are decoded first
+ * and packed into a separate small atlas, so the sprite can be drawn before
+ * all other frames are ready. The atlases are returned as futures, and the
+ * listener is called on the loader thread when each of them is ready. The
+ * packed atlas is kept in the shared bitmap cache, and when it is already
+ * there nothing is decoded and the listener is called on the caller thread.
+ * When a frame can not be decoded, the failure is logged and thrown by the
+ * get() method of the futures, and the listener is not called.
+ */
+public class SpriteLoader {
+
+    private static final String TAG = "SpriteLoader";
+
+    // bounded executor, shared by all loaders
+    private static final int THREADS_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS_COUNT, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SpriteLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private LoadTask priorityAtlas;                 // atlas with the frames of the priority row
+    private LoadTask atlas;                         // atlas with all frames
+    private volatile Listener listener;             // listener called when the atlases are ready
+
+    /**
+     * Listener called on the loader thread, when the atlases are ready
+     */
+    public interface Listener {
+
+        /**
+         * Called when the frames of the priority row are ready
+         *
+         * @param atlas atlas with the priority row frames, frame index is the column
+         */
+        void onPriorityAtlasReady(SpriteAtlas atlas);
+
+        /**
+         * Called when all frames are ready
+         *
+         * @param atlas atlas with all frames, frame index is (row * columns + column)
+         */
+        void onAtlasReady(SpriteAtlas atlas);
+    }
+
+    private SpriteLoader(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start loading the frames on paths {url}{row}/{column}.png
+     *
+     * @param context
+     * @param url         folder with the frames
+     * @param rows        number of rows (states)
+     * @param columns     number of columns (frames per state)
+     * @param priorityRow row that is decoded first
+     * @param listener    listener called when the atlases are ready, can be null
+     * @return the loader
+     */
+    public static SpriteLoader load(Context context, String url, int rows, int columns,
+                                    int priorityRow, Listener listener) {
+        return load(context, url, rows, columns, 0, 0, priorityRow, listener);
+    }
+
+    /**
+     * Start loading the frames on paths {url}{row}/{column}.png, decoded
+     * straight to the given frame size
+     *
+     * @param context
+     * @param url         folder with the frames
+     * @param rows        number of rows (states)
+     * @param columns     number of columns (frames per state)
+     * @param frameWidth  target frame width, or 0 for the original size
+     * @param frameHeight target frame height, or 0 for the original size
+     * @param priorityRow row that is decoded first
+     * @param listener    listener called when the atlases are ready, can be null
+     * @return the loader
+     */
+    public static SpriteLoader load(final Context context, final String url, final int rows, final int columns,
+                                    final int frameWidth, final int frameHeight,
+                                    final int priorityRow, Listener listener) {
+
+        final SpriteLoader loader = new SpriteLoader(listener);
+
+        // atlas is already in the cache, complete the futures without decoding
+        final String key = SpriteAtlas.key(url, rows, columns, frameWidth, frameHeight);
+        final SpriteAtlas cached = BitmapCache.getInstance().getAtlas(key);
+        if (cached != null) {
+            loader.priorityAtlas = new LoadTask(new Callable<SpriteAtlas>() {
+                @Override
+                public SpriteAtlas call() {
+                    return null;
+                }
+            });
+            loader.atlas = new LoadTask(new Callable<SpriteAtlas>() {
+                @Override
+                public SpriteAtlas call() {
+                    if (loader.listener != null) {
+                        loader.listener.onAtlasReady(cached);
+                    }
+                    return cached;
+                }
+            });
+            loader.priorityAtlas.run();
+            loader.atlas.run();
+            return loader;
+        }
+
+        // decode tasks, the priority row is submitted first
+        final List<Future<Bitmap>> frames = new ArrayList<>(rows * columns);
+        for (int i = 0; i < rows * columns; i++) {
+            frames.add(null);
+        }
+        for (int j = 0; j < columns; j++) {
+            frames.set(priorityRow * columns + j, decode(context, url, priorityRow, j, frameWidth, frameHeight));
+        }
+
+        // the pack tasks are submitted after the decode tasks they wait for, so
+        // those are already taken from the queue and waiting can not deadlock
+        loader.priorityAtlas = new LoadTask(new Callable<SpriteAtlas>() {
+            @Override
+            public SpriteAtlas call() throws Exception {
+                Bitmap[] row = new Bitmap[columns];
+                for (int j = 0; j < columns; j++) {
+                    row[j] = frames.get(priorityRow * columns + j).get();
+                }
+                SpriteAtlas atlas = SpriteAtlas.pack(row, false);
+                Listener listener = loader.listener;
+                if (listener != null) {
+                    listener.onPriorityAtlasReady(atlas);
+                }
+                return atlas;
+            }
+        });
+        EXECUTOR.execute(loader.priorityAtlas);
+
+        for (int i = 0; i < rows; i++) {
+            if (i == priorityRow) {
+                continue;
+            }
+            for (int j = 0; j < columns; j++) {
+                frames.set(i * columns + j, decode(context, url, i, j, frameWidth, frameHeight));
+            }
+        }
+
+        loader.atlas = new LoadTask(new Callable<SpriteAtlas>() {
+            @Override
+            public SpriteAtlas call() throws Exception {
+                Bitmap[] all = new Bitmap[frames.size()];
+                for (int i = 0; i < all.length; i++) {
+                    all[i] = frames.get(i).get();
+                }
+
+                // the priority atlas has its own copy of the frames
+                loader.priorityAtlas.get();
+                SpriteAtlas atlas = SpriteAtlas.pack(all, true);
+                BitmapCache.getInstance().putAtlas(key, atlas);
+                Listener listener = loader.listener;
+                if (listener != null) {
+                    listener.onAtlasReady(atlas);
+                }
+                return atlas;
+            }
+        });
+        EXECUTOR.execute(loader.atlas);
+
+        return loader;
+    }
+
+    private static Future<Bitmap> decode(final Context context, final String url, final int row, final int column,
+                                         final int width, final int height) {
+        return EXECUTOR.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws IOException {
+                // the frames have transparent pixels, that are read when they are packed
+                return Base.decodeBitmapFromAssets(context, url + row + "/" + column + ".png",
+                        width, height, Base.preferredConfig(true, true));
+            }
+        });
+    }
+
+    /**
+     * Task that packs an atlas, and logs the failure when it can not be
+     * packed, since it runs on the executor and nobody may call get()
+     */
+    private static class LoadTask extends FutureTask<SpriteAtlas> {
+
+        LoadTask(Callable<SpriteAtlas> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not load sprite atlas", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get future with the atlas holding only the priority row frames, its
+     * value is null when the atlas with all frames was found in the cache
+     *
+     * @return the future
+     */
+    public Future<SpriteAtlas> getPriorityAtlas() {
+        return priorityAtlas;
+    }
+
+    /**
+     * Get future with the atlas holding all frames
+     *
+     * @return the future
+     */
+    public Future<SpriteAtlas> getAtlas() {
+        return atlas;
+    }
+
+    /**
+     * Block until all frames are loaded
+     *
+     * @return atlas with all frames
+     */
+    public SpriteAtlas await() throws InterruptedException, ExecutionException {
+        return atlas.get();
+    }
+
+    /**
+     * Remove the listener, for example when the sprite is no longer used
+     */
+    public void removeListener() {
+        listener = null;
+    }
+}
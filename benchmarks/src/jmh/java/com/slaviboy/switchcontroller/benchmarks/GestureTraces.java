@@ -0,0 +1,106 @@
+package com.slaviboy.switchcontroller.benchmarks;
+
+/**
+ * Gesture traces used by the benchmarks, each trace holds the finger
+ * coordinates in parallel float arrays, as they are received by the
+ * controller from a digitizer sampling at 240 Hz. The traces are
+ * generated from a fixed seed, so every run replays the same samples.
+ */
+public class GestureTraces {
+
+    // size of the controller used by all traces (background 200x200, foreground 100x100)
+    public static final float BG_SIZE = 200;
+    public static final float FG_SIZE = 100;
+    public static final float VIEW_SIZE = BG_SIZE + FG_SIZE;
+    public static final float CENTER = VIEW_SIZE / 2;
+
+    // samples per second
+    public static final int SAMPLE_RATE = 240;
+
+    public static final String CIRCLE = "circle";
+    public static final String FLICK = "flick";
+    public static final String REST = "rest";
+
+    public final float[] x;
+    public final float[] y;
+
+    private GestureTraces(int size) {
+        x = new float[size];
+        y = new float[size];
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Get trace by its name
+     *
+     * @param name one of CIRCLE, FLICK or REST
+     * @return the trace
+     */
+    public static GestureTraces get(String name) {
+        switch (name) {
+            case CIRCLE:
+                return circle();
+            case FLICK:
+                return flick();
+            case REST:
+                return rest();
+        }
+        throw new IllegalArgumentException("Unknown trace " + name);
+    }
+
+    /**
+     * Thumb rotating the stick around the rim, two turns per second, with
+     * the radius going in and out of the background, so half of the samples
+     * are clamped on the rim.
+     */
+    private static GestureTraces circle() {
+        GestureTraces trace = new GestureTraces(SAMPLE_RATE * 4);
+        for (int i = 0; i < trace.size(); i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double angle = t * 4 * Math.PI;
+            double radius = BG_SIZE / 2 * (1 + 0.5 * Math.sin(t * 2 * Math.PI));
+            trace.x[i] = (float) (CENTER + Math.cos(angle) * radius);
+            trace.y[i] = (float) (CENTER + Math.sin(angle) * radius);
+        }
+        return trace;
+    }
+
+    /**
+     * Fast flicks from the center to a random point far outside the
+     * background and back, each flick lasts 1/8 of a second.
+     */
+    private static GestureTraces flick() {
+        java.util.Random random = new java.util.Random(42);
+        int flickSamples = SAMPLE_RATE / 8;
+        GestureTraces trace = new GestureTraces(flickSamples * 32);
+        for (int i = 0; i < trace.size(); i += flickSamples) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double radius = BG_SIZE * (1 + random.nextDouble());
+            for (int j = 0; j < flickSamples; j++) {
+                double progress = Math.sin(Math.PI * j / flickSamples);
+                trace.x[i + j] = (float) (CENTER + Math.cos(angle) * radius * progress);
+                trace.y[i + j] = (float) (CENTER + Math.sin(angle) * radius * progress);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Thumb resting on the stick near the boundary between the up and right
+     * directions, with a small jitter, which causes frequent direction changes.
+     */
+    private static GestureTraces rest() {
+        java.util.Random random = new java.util.Random(7);
+        GestureTraces trace = new GestureTraces(SAMPLE_RATE * 4);
+        double radius = BG_SIZE / 3;
+        for (int i = 0; i < trace.size(); i++) {
+            double angle = Math.PI / 4 + (random.nextDouble() - 0.5) * 0.1;
+            trace.x[i] = (float) (CENTER + Math.cos(angle) * radius + random.nextGaussian());
+            trace.y[i] = (float) (CENTER - Math.sin(angle) * radius + random.nextGaussian());
+        }
+        return trace;
+    }
+}
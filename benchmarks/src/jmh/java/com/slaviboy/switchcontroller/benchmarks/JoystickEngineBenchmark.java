@@ -0,0 +1,229 @@
+package com.slaviboy.switchcontroller.benchmarks;
+
+import com.slaviboy.switchcontroller.engine.DeadZone;
+import com.slaviboy.switchcontroller.engine.InputPipeline;
+import com.slaviboy.switchcontroller.engine.InputTrace;
+import com.slaviboy.switchcontroller.engine.JoystickEngine;
+import com.slaviboy.switchcontroller.engine.KnobPredictor;
+import com.slaviboy.switchcontroller.engine.OneEuroFilter;
+import com.slaviboy.switchcontroller.engine.ResponseCurve;
+import com.slaviboy.switchcontroller.engine.TraceReplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the touch processing hot path, each invocation replays a
+ * whole gesture trace, and the score is reported per event. Run with the gc
+ * profiler (the default for the jmh task) to get the allocated bytes per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JoystickEngineBenchmark {
+
+    // all traces are replayed as this number of samples, so the score is per event
+    private static final int EVENTS = 960;
+
+    @Param({GestureTraces.CIRCLE, GestureTraces.FLICK, GestureTraces.REST})
+    public String trace;
+
+    private float[] x;
+    private float[] y;
+    private float[] deltaX;
+    private float[] deltaY;
+    private long[] times;
+    private JoystickEngine engine;
+    private JoystickEngine stickyEngine;
+    private JoystickEngine pipelineEngine;
+    private TraceReplayer.Listener listener;
+    private InputTrace inputTrace;
+    private TraceReplayer replayer;
+    private KnobPredictor predictor;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+
+        GestureTraces gesture = GestureTraces.get(trace);
+        x = new float[EVENTS];
+        y = new float[EVENTS];
+        deltaX = new float[EVENTS];
+        deltaY = new float[EVENTS];
+        times = new long[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            x[i] = gesture.x[i % gesture.size()];
+            y[i] = gesture.y[i % gesture.size()];
+            deltaX[i] = x[i] - GestureTraces.CENTER;
+            deltaY[i] = y[i] - GestureTraces.CENTER;
+            times[i] = i * 1000 / GestureTraces.SAMPLE_RATE;
+        }
+
+        engine = new JoystickEngine(false, false);
+        engine.setSize(GestureTraces.BG_SIZE, GestureTraces.BG_SIZE,
+                GestureTraces.FG_SIZE, GestureTraces.FG_SIZE,
+                GestureTraces.VIEW_SIZE, GestureTraces.VIEW_SIZE);
+
+        stickyEngine = new JoystickEngine(true, true);
+        stickyEngine.setSize(GestureTraces.BG_SIZE, GestureTraces.BG_SIZE,
+                GestureTraces.FG_SIZE, GestureTraces.FG_SIZE,
+                GestureTraces.VIEW_SIZE, GestureTraces.VIEW_SIZE);
+
+        pipelineEngine = new JoystickEngine(false, false);
+        pipelineEngine.setSize(GestureTraces.BG_SIZE, GestureTraces.BG_SIZE,
+                GestureTraces.FG_SIZE, GestureTraces.FG_SIZE,
+                GestureTraces.VIEW_SIZE, GestureTraces.VIEW_SIZE);
+        pipelineEngine.setInputPipeline(new InputPipeline(
+                new DeadZone(DeadZone.RADIAL, 0.1f, 0.9f),
+                ResponseCurve.exponential(2),
+                new OneEuroFilter()));
+
+        // the same samples as recorded by SwitchController, one finger down, moving and up
+        inputTrace = new InputTrace(EVENTS);
+        inputTrace.record(0, InputTrace.ACTION_DOWN, 0, GestureTraces.CENTER, GestureTraces.CENTER);
+        for (int i = 1; i < EVENTS - 1; i++) {
+            inputTrace.record(i * 1000 / GestureTraces.SAMPLE_RATE, InputTrace.ACTION_MOVE, 0, x[i], y[i]);
+        }
+        inputTrace.record(EVENTS * 1000 / GestureTraces.SAMPLE_RATE, InputTrace.ACTION_UP, 0, x[EVENTS - 1], y[EVENTS - 1]);
+
+        JoystickEngine replayEngine = new JoystickEngine(false, false);
+        replayEngine.setSize(GestureTraces.BG_SIZE, GestureTraces.BG_SIZE,
+                GestureTraces.FG_SIZE, GestureTraces.FG_SIZE,
+                GestureTraces.VIEW_SIZE, GestureTraces.VIEW_SIZE);
+        replayer = new TraceReplayer(replayEngine);
+
+        predictor = new KnobPredictor();
+
+        // the same calls as SwitchController.ControllerListener, used by the direct and the replayed benchmarks
+        listener = new TraceReplayer.Listener() {
+            @Override
+            public void onDirectionChange(int id, int direction, int action) {
+                blackhole.consume(direction);
+            }
+
+            @Override
+            public void onMove(int id, double angle, double distance) {
+                blackhole.consume(angle);
+                blackhole.consume(distance);
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int direction() {
+        int direction = JoystickEngine.DIRECTION_CENTER;
+        for (int i = 0; i < EVENTS; i++) {
+            direction = JoystickEngine.direction(deltaX[i], deltaY[i], direction);
+        }
+        return direction;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void angleBetween(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            blackhole.consume(JoystickEngine.angleBetween(
+                    GestureTraces.CENTER, GestureTraces.CENTER, x[i], y[i]));
+        }
+    }
+
+    /**
+     * Full move(), including rim clamping (pointOnLine), angle and direction.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void move(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            engine.move(x[i], y[i]);
+            blackhole.consume(engine.getKnobX());
+            blackhole.consume(engine.getKnobY());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void moveSticky(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            stickyEngine.move(x[i], y[i]);
+            blackhole.consume(stickyEngine.getKnobX());
+            blackhole.consume(stickyEngine.getKnobY());
+        }
+    }
+
+    /**
+     * move() followed by the listener calls, as done by SwitchController.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void moveAndDispatch() {
+        for (int i = 0; i < EVENTS; i++) {
+            if (engine.move(x[i], y[i])) {
+                listener.onDirectionChange(0, engine.getDirection(), -1);
+            }
+            listener.onMove(0, engine.getAngle(), engine.getDistance());
+        }
+    }
+
+    /**
+     * Replay of a recorded input trace, including reading the binary records
+     * and the pointer capture logic, as done for load tests of listeners.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public int replay() {
+        return replayer.replay(inputTrace, listener);
+    }
+
+    /**
+     * Velocity regression over the recent samples and the extrapolation
+     * to the next frame deadline, without the engine.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void predict(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            predictor.add(times[i], deltaX[i], deltaY[i]);
+            blackhole.consume(predictor.getPredictedAngle());
+            blackhole.consume(predictor.getPredictedDistance());
+        }
+    }
+
+    /**
+     * move() followed by the prediction, as done by SwitchController
+     * when the prediction is enabled.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void movePredicted(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            engine.move(x[i], y[i]);
+            predictor.add(times[i], engine.getDeltaX(), engine.getDeltaY());
+            blackhole.consume(engine.getKnobX());
+            blackhole.consume(predictor.getPredictedAngle());
+        }
+    }
+
+    /**
+     * move() with dead zone, response curve and one euro filter stages,
+     * to compare with move() that has only the normalization.
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void movePipeline(Blackhole blackhole) {
+        for (int i = 0; i < EVENTS; i++) {
+            pipelineEngine.move(x[i], y[i], times[i]);
+            blackhole.consume(pipelineEngine.getAnalogX());
+            blackhole.consume(pipelineEngine.getAnalogY());
+        }
+    }
+}
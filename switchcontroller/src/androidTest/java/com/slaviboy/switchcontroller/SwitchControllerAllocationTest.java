@@ -0,0 +1,92 @@
+package com.slaviboy.switchcontroller;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test, that checks that the touch path onTouchEvent() -> move() -> listener
+ * does not allocate any objects, while the finger is moving on the controller.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SwitchControllerAllocationTest {
+
+    private static final int SIZE = 200;
+    private static final int WARM_UP_MOVES = 1000;
+    private static final int MOVES = 10000;
+
+    private int allocations;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void move_doesNotAllocate() {
+
+        final Context context = InstrumentationRegistry.getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+
+                SwitchController controller = new SwitchController.Builder(context, SIZE, SIZE)
+                        .withIsSticky(true)
+                        .build();
+                controller.measure(
+                        View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+                controller.layout(0, 0, SIZE, SIZE);
+                controller.updateImageViews();
+                controller.setControllerListner(new SwitchController.ControllerListener() {
+                    @Override
+                    public void onDirectionChange(int id, int direction, int action) {
+                    }
+
+                    @Override
+                    public void onMove(int id, double angle, double distance) {
+                    }
+                });
+
+                long time = SystemClock.uptimeMillis();
+                MotionEvent event = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, SIZE / 2f, SIZE / 2f, 0);
+                controller.onTouchEvent(event);
+                event.setAction(MotionEvent.ACTION_MOVE);
+
+                // warm up, so lazy initialized objects are not counted
+                circle(controller, event, WARM_UP_MOVES);
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                circle(controller, event, MOVES);
+                allocations = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+
+                event.recycle();
+            }
+        });
+
+        assertEquals(0, allocations);
+    }
+
+    /**
+     * Move the finger in circles, half of the samples are inside the
+     * background and the other half are outside, that way both the free
+     * and the clamped on the rim knob positions are covered.
+     */
+    private static void circle(SwitchController controller, MotionEvent event, int moves) {
+        for (int i = 0; i < moves; i++) {
+            double angle = i * 0.1;
+            float radius = (i % 2 == 0) ? SIZE / 8f : SIZE;
+            event.setLocation(
+                    (float) (SIZE / 2f + Math.cos(angle) * radius),
+                    (float) (SIZE / 2f + Math.sin(angle) * radius));
+            controller.onTouchEvent(event);
+        }
+    }
+}
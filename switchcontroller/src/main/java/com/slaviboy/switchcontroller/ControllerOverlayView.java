@@ -0,0 +1,410 @@
+package com.slaviboy.switchcontroller;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.slaviboy.switchcontroller.engine.ControllerState;
+import com.slaviboy.switchcontroller.engine.DirectionQuantizer;
+import com.slaviboy.switchcontroller.engine.InputPipeline;
+import com.slaviboy.switchcontroller.engine.JoystickEngine;
+
+/**
+ * ControllerOverlayView Class (Java)
+ * Lightweight view that draws any number of switch controllers on a single
+ * canvas, instead of using a separate layout with two image views for each
+ * controller. It does its own hit testing, and each controller captures the
+ * pointer that goes down inside it, so multiple controllers can be used at
+ * the same time. The listener receives the same calls as the listener of
+ * SwitchController, with ids from the same counter, so a single listener can
+ * tell apart the controllers of overlays and switch controllers. Touches that
+ * do not hit any controller are not consumed, so they reach the views below.
+ */
+public class ControllerOverlayView extends View {
+
+    private Controller[] controllers;                               // attached controllers, in the order they were added
+    private int controllersCount;                                   // number of attached controllers
+    private SwitchController.ControllerListener controllerListener; // attached listener that implement methods, that will be called
+
+    public ControllerOverlayView(Context context) {
+        super(context);
+        init();
+    }
+
+    public ControllerOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public ControllerOverlayView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        controllers = new Controller[4];
+    }
+
+    /**
+     * Add controller, that is drawn inside the given bounds relative to this view,
+     * the background and foreground are sized the same way as in SwitchController,
+     * leaving space for the foreground to move half its size outside the background.
+     *
+     * @param background background drawable
+     * @param foreground foreground drawable
+     * @param left       left position of the controller
+     * @param top        top position of the controller
+     * @param width      controller width
+     * @param height     controller height
+     * @return the controller id, that is used by the setters and in the listener calls
+     */
+    public int addController(Drawable background, Drawable foreground,
+                             int left, int top, int width, int height) {
+
+        if (controllersCount == controllers.length) {
+            Controller[] temp = new Controller[controllers.length * 2];
+            System.arraycopy(controllers, 0, temp, 0, controllersCount);
+            controllers = temp;
+        }
+
+        // each controller gets its own copy of the drawables, so the bounds and the alpha
+        // are not shared with other controllers or views using the same drawables
+        Controller controller = new Controller(SwitchController.nextControllerId(), copyOf(background), copyOf(foreground));
+        controllers[controllersCount++] = controller;
+        setControllerBounds(controller.id, left, top, width, height);
+        invalidate();
+        return controller.id;
+    }
+
+    /**
+     * Create independent copy of a drawable, mutate() alone returns the same
+     * instance for a drawable that is already mutated
+     *
+     * @param drawable the drawable
+     * @return the copy
+     */
+    private Drawable copyOf(Drawable drawable) {
+        Drawable.ConstantState state = drawable.getConstantState();
+        Drawable copy = (state != null) ? state.newDrawable(getResources()) : drawable;
+        return copy.mutate();
+    }
+
+    /**
+     * Get the attached controller with a given id
+     *
+     * @param id controller id, returned by addController()
+     * @return the controller
+     */
+    private Controller get(int id) {
+        for (int i = 0; i < controllersCount; i++) {
+            if (controllers[i].id == id) {
+                return controllers[i];
+            }
+        }
+        throw new IllegalArgumentException("No controller with id " + id);
+    }
+
+    /**
+     * Move or resize controller
+     *
+     * @param id     controller id
+     * @param left   left position of the controller
+     * @param top    top position of the controller
+     * @param width  controller width
+     * @param height controller height
+     */
+    public void setControllerBounds(int id, int left, int top, int width, int height) {
+
+        Controller controller = get(id);
+        controller.left = left;
+        controller.top = top;
+        controller.width = width;
+        controller.height = height;
+
+        double ratioWidth = (double) controller.foreground.getIntrinsicWidth() / controller.background.getIntrinsicWidth();
+        double ratioHeight = (double) controller.foreground.getIntrinsicHeight() / controller.background.getIntrinsicHeight();
+
+        // background size is (controller size - foreground size), and it is centered
+        int bgWidth = (int) (width / (1 + ratioWidth));
+        int bgHeight = (int) (height / (1 + ratioHeight));
+        controller.fgWidth = (int) (bgWidth * ratioWidth);
+        controller.fgHeight = (int) (bgHeight * ratioHeight);
+
+        controller.bgWidth = bgWidth;
+        controller.bgHeight = bgHeight;
+        controller.bgLeft = left + (width - bgWidth) / 2;
+        controller.bgTop = top + (height - bgHeight) / 2;
+
+        controller.engine.setSize(bgWidth, bgHeight, controller.fgWidth, controller.fgHeight, width, height);
+        invalidate();
+    }
+
+    public void setSticky(int id, boolean isSticky) {
+        get(id).engine.setSticky(isSticky);
+    }
+
+    public void setKeepInside(int id, boolean keepInside) {
+        get(id).engine.setKeepInside(keepInside);
+    }
+
+    /**
+     * Set the number of directions for a controller, see SwitchController.setDirectionWays()
+     */
+    public void setDirectionWays(int id, int ways, float hysteresis, float deadZone) {
+        get(id).engine.setQuantizer(new DirectionQuantizer(ways, hysteresis, deadZone));
+    }
+
+    /**
+     * Set the input pipeline for a controller, see SwitchController.setInputPipeline()
+     */
+    public void setInputPipeline(int id, InputPipeline pipeline) {
+        get(id).engine.setInputPipeline(pipeline);
+    }
+
+    public void setDetectTransparency(int id, boolean detectTransparency) {
+        get(id).detectTransparency = detectTransparency;
+    }
+
+    public void setOpacity(int id, float activeOpacity, float inactiveOpacity) {
+        Controller controller = get(id);
+        controller.activeOpacity = activeOpacity;
+        controller.inactiveOpacity = inactiveOpacity;
+        invalidate();
+    }
+
+    public void setActions(int id, int[] actions) {
+        get(id).actions = actions;
+    }
+
+    /**
+     * Get the lock free state of a controller, that can be polled from any thread
+     *
+     * @param id controller id
+     * @return the state
+     */
+    public ControllerState getState(int id) {
+        return get(id).state;
+    }
+
+    public JoystickEngine getEngine(int id) {
+        return get(id).engine;
+    }
+
+    public int getControllerCount() {
+        return controllersCount;
+    }
+
+    public void setControllerListner(SwitchController.ControllerListener controllerListener) {
+        this.controllerListener = controllerListener;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+
+        boolean isChanged = false;
+        int maskedAction = event.getActionMasked();
+        switch (maskedAction) {
+
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+
+                int pointerIndex = event.getActionIndex();
+                float x = event.getX(pointerIndex);
+                float y = event.getY(pointerIndex);
+
+                // offer the pointer to the controllers, starting from the top most
+                for (int i = controllersCount - 1; i >= 0; i--) {
+                    Controller controller = controllers[i];
+                    float localX = x - controller.left;
+                    float localY = y - controller.top;
+                    if (controller.isActive || !controller.contains(localX, localY)) {
+                        continue;
+                    }
+
+                    controller.isActive = true;
+                    controller.pointerId = event.getPointerId(pointerIndex);
+                    move(i, localX, localY, event.getEventTime());
+                    isChanged = true;
+                    break;
+                }
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+
+                for (int i = 0; i < controllersCount; i++) {
+                    Controller controller = controllers[i];
+                    if (!controller.isActive) {
+                        continue;
+                    }
+
+                    int pointerIndex = event.findPointerIndex(controller.pointerId);
+                    if (pointerIndex >= 0) {
+                        move(i, event.getX(pointerIndex) - controller.left,
+                                event.getY(pointerIndex) - controller.top, event.getEventTime());
+                        isChanged = true;
+                    }
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_CANCEL: {
+
+                int pointerId = event.getPointerId(event.getActionIndex());
+                for (int i = 0; i < controllersCount; i++) {
+                    Controller controller = controllers[i];
+                    if (controller.isActive && (maskedAction == MotionEvent.ACTION_CANCEL ||
+                            controller.pointerId == pointerId)) {
+                        release(i, event.getEventTime());
+                        isChanged = true;
+                    }
+                }
+                break;
+            }
+        }
+
+        if (isChanged) {
+            invalidate();
+        }
+
+        // a down event that misses all controllers is left for the views below, the
+        // later events are consumed while any controller is active or was just released
+        return isChanged || isAnyActive();
+    }
+
+    private boolean isAnyActive() {
+        for (int i = 0; i < controllersCount; i++) {
+            if (controllers[i].isActive) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the foreground of a controller, and call the listener
+     *
+     * @param index   controller index
+     * @param fingerX x coordinate relative to the controller
+     * @param fingerY y coordinate relative to the controller
+     * @param time    event time in ms
+     */
+    private void move(int index, float fingerX, float fingerY, long time) {
+
+        Controller controller = controllers[index];
+        JoystickEngine engine = controller.engine;
+        boolean isDirectionChanged = engine.move(fingerX, fingerY, time);
+
+        if (controllerListener != null) {
+            if (isDirectionChanged) {
+                dispatchDirectionChange(index);
+            }
+            controllerListener.onMove(controller.id, engine.getAngle(), engine.getDistance());
+        }
+        controller.state.publish(engine, true, time);
+    }
+
+    /**
+     * Restore the foreground of a controller to the center, and call the listener
+     *
+     * @param index controller index
+     * @param time  event time in ms
+     */
+    private void release(int index, long time) {
+
+        Controller controller = controllers[index];
+        JoystickEngine engine = controller.engine;
+        engine.release();
+        controller.isActive = false;
+        controller.pointerId = MotionEvent.INVALID_POINTER_ID;
+
+        if (controllerListener != null) {
+            dispatchDirectionChange(index);
+            controllerListener.onMove(controller.id, engine.getAngle(), engine.getDistance());
+        }
+        controller.state.publish(engine, false, time);
+    }
+
+    private void dispatchDirectionChange(int index) {
+        Controller controller = controllers[index];
+        int currentDirection = controller.engine.getDirection();
+        int currentAction = (controller.actions != null) ? controller.actions[currentDirection] : -1;
+        controllerListener.onDirectionChange(controller.id, currentDirection, currentAction);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        for (int i = 0; i < controllersCount; i++) {
+            Controller controller = controllers[i];
+            int alpha = (int) (255 * (controller.isActive ? controller.activeOpacity : controller.inactiveOpacity));
+
+            controller.background.setBounds(controller.bgLeft, controller.bgTop,
+                    controller.bgLeft + controller.bgWidth, controller.bgTop + controller.bgHeight);
+            controller.background.setAlpha(alpha);
+            controller.background.draw(canvas);
+
+            int fgLeft = controller.left + (int) controller.engine.getKnobX();
+            int fgTop = controller.top + (int) controller.engine.getKnobY();
+            controller.foreground.setBounds(fgLeft, fgTop, fgLeft + controller.fgWidth, fgTop + controller.fgHeight);
+            controller.foreground.setAlpha(alpha);
+            controller.foreground.draw(canvas);
+        }
+    }
+
+    /**
+     * Class holding the drawables, bounds and state of a single controller
+     */
+    private static class Controller {
+
+        final int id;
+        final Drawable background;
+        final Drawable foreground;
+        final JoystickEngine engine;
+        final ControllerState state;
+
+        int left;
+        int top;
+        int width;
+        int height;
+        int bgLeft;
+        int bgTop;
+        int bgWidth;
+        int bgHeight;
+        int fgWidth;
+        int fgHeight;
+
+        float activeOpacity;
+        float inactiveOpacity;
+        boolean detectTransparency;
+        int[] actions;
+
+        boolean isActive;
+        int pointerId;
+
+        Controller(int id, Drawable background, Drawable foreground) {
+            this.id = id;
+            this.background = background;
+            this.foreground = foreground;
+            engine = new JoystickEngine();
+            state = new ControllerState();
+            activeOpacity = 1;
+            inactiveOpacity = 1;
+            pointerId = MotionEvent.INVALID_POINTER_ID;
+        }
+
+        /**
+         * Check if a point relative to the controller hits it
+         */
+        boolean contains(float x, float y) {
+            if (detectTransparency) {
+                return x >= 0 && y >= 0 && x < width && y < height;
+            }
+            return engine.isInside(x, y);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.slaviboy.switchcontroller;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.slaviboy.switchcontroller.engine.ControllerState;
+import com.slaviboy.switchcontroller.engine.DirectionQuantizer;
+import com.slaviboy.switchcontroller.engine.InputPipeline;
+import com.slaviboy.switchcontroller.engine.JoystickEngine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ControllerSurfaceView Class (Java)
+ * Switch controller that draws its background and foreground on its own
+ * translucent surface from a dedicated render thread, placed on top of the
+ * game SurfaceView. Touch events are still received on the UI thread, but
+ * the foreground is redrawn as soon as new state is published, without
+ * waiting for the UI thread traversal, so UI thread jank does not delay the
+ * controller feedback. The time from the event to posting the frame with it
+ * is measured and can be read using the latency getters.
+ */
+public class ControllerSurfaceView extends SurfaceView implements SurfaceHolder.Callback, Runnable {
+
+    // time to wait before retrying, when the surface canvas can not be locked
+    private static final long SURFACE_RETRY_NANOS = 16000000;
+
+    private Drawable background;                    // background drawable, used only by the render thread after start
+    private Drawable foreground;                    // foreground drawable, used only by the render thread after start
+    private float activeOpacity;                    // opacity when the user is using the switch controller
+    private float inactiveOpacity;                  // opacity when the user is not using the controller
+    private boolean detectTransparency;             // detect events when finger is on the transparent area outside the background
+    private int[] actions;                          // attached actions to the controller
+    private SwitchController.ControllerListener controllerListener; // attached listener, called on the UI thread
+    private int controllerId;                       // controller id, from the same counter as SwitchController
+
+    private JoystickEngine engine;                  // engine with the math, used on the UI thread
+    private ControllerState state;                  // state published by the UI thread and drawn by the render thread
+    private boolean isActive;                       // whether a pointer is captured by the controller
+    private int pointerId;                          // id of the captured pointer
+
+    private Thread renderThread;                    // thread that draws the controller
+    private volatile boolean isRunning;             // whether the render thread is running
+    private volatile boolean isSizeChanged;         // whether the drawable bounds should be recalculated by the render thread
+    private volatile int width;                     // view width
+    private volatile int height;                    // view height
+    private volatile int bgWidth;                   // background width
+    private volatile int bgHeight;                  // background height
+    private volatile int fgWidth;                   // foreground width
+    private volatile int fgHeight;                  // foreground height
+
+    // latency between the event time and the frame with it posted in ms, recorded only by the render
+    // thread and published under a sequence lock, the same way as ControllerState, so readers on other
+    // threads see the values of a single frame
+    private long maxLatencyLocal;                   // render thread copy of the maximum latency
+    private long totalLatencyLocal;                 // render thread copy of the latency sum
+    private long latencyCountLocal;                 // render thread copy of the number of frames
+    private int handledResets;                      // number of reset requests applied by the render thread
+    private volatile int latencyResets;             // number of reset requests, incremented by resetLatency()
+    private volatile int latencyVersion;            // odd while the render thread is publishing the values
+    private volatile int publishedResets;           // number of reset requests applied to the published values
+    private volatile long lastLatency;
+    private volatile long maxLatency;
+    private volatile long totalLatency;
+    private volatile long latencyCount;
+
+    public ControllerSurfaceView(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public ControllerSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public ControllerSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(Context context) {
+
+        controllerId = SwitchController.nextControllerId();
+        engine = new JoystickEngine();
+        state = new ControllerState();
+        pointerId = MotionEvent.INVALID_POINTER_ID;
+        activeOpacity = 1;
+        inactiveOpacity = 1;
+        background = ContextCompat.getDrawable(context, R.drawable.controller_bg).mutate();
+        foreground = ContextCompat.getDrawable(context, R.drawable.controller_fg).mutate();
+
+        // translucent surface, composited on top of the game surface
+        setZOrderMediaOverlay(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    /**
+     * Set the drawables, must be called before the surface is created
+     *
+     * @param background background drawable
+     * @param foreground foreground drawable
+     */
+    public void setDrawables(Drawable background, Drawable foreground) {
+        this.background = background.mutate();
+        this.foreground = foreground.mutate();
+        updateSize(getWidth(), getHeight());
+    }
+
+    public void setOpacity(float activeOpacity, float inactiveOpacity) {
+        this.activeOpacity = activeOpacity;
+        this.inactiveOpacity = inactiveOpacity;
+    }
+
+    public void setSticky(boolean isSticky) {
+        engine.setSticky(isSticky);
+    }
+
+    public void setKeepInside(boolean keepInside) {
+        engine.setKeepInside(keepInside);
+    }
+
+    /**
+     * Set the number of directions, see SwitchController.setDirectionWays()
+     */
+    public void setDirectionWays(int ways, float hysteresis, float deadZone) {
+        engine.setQuantizer(new DirectionQuantizer(ways, hysteresis, deadZone));
+    }
+
+    /**
+     * Set the input pipeline, see SwitchController.setInputPipeline()
+     */
+    public void setInputPipeline(InputPipeline pipeline) {
+        engine.setInputPipeline(pipeline);
+    }
+
+    public void setDetectTransparency(boolean detectTransparency) {
+        this.detectTransparency = detectTransparency;
+    }
+
+    public void setActions(int[] actions) {
+        this.actions = actions;
+    }
+
+    public void setControllerListner(SwitchController.ControllerListener controllerListener) {
+        this.controllerListener = controllerListener;
+    }
+
+    public ControllerState getState() {
+        return state;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateSize(w, h);
+    }
+
+    /**
+     * Set the background and foreground sizes the same way as SwitchController
+     * does, leaving space for the foreground to move half its size outside
+     * the background.
+     */
+    private void updateSize(int width, int height) {
+
+        this.width = width;
+        this.height = height;
+
+        double ratioWidth = (double) foreground.getIntrinsicWidth() / background.getIntrinsicWidth();
+        double ratioHeight = (double) foreground.getIntrinsicHeight() / background.getIntrinsicHeight();
+        bgWidth = (int) (width / (1 + ratioWidth));
+        bgHeight = (int) (height / (1 + ratioHeight));
+        fgWidth = (int) (bgWidth * ratioWidth);
+        fgHeight = (int) (bgHeight * ratioHeight);
+
+        engine.setSize(bgWidth, bgHeight, fgWidth, fgHeight, width, height);
+        state.publish(engine, isActive, SystemClock.uptimeMillis());
+        isSizeChanged = true;
+        LockSupport.unpark(renderThread);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+
+        int maskedAction = event.getActionMasked();
+        switch (maskedAction) {
+
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+
+                int pointerIndex = event.getActionIndex();
+                float x = event.getX(pointerIndex);
+                float y = event.getY(pointerIndex);
+                if (!isActive && (detectTransparency || engine.isInside(x, y))) {
+                    isActive = true;
+                    pointerId = event.getPointerId(pointerIndex);
+                    move(x, y, event.getEventTime());
+                }
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+
+                int pointerIndex = isActive ? event.findPointerIndex(pointerId) : -1;
+                if (pointerIndex >= 0) {
+                    move(event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_CANCEL: {
+
+                if (isActive && (maskedAction == MotionEvent.ACTION_CANCEL ||
+                        event.getPointerId(event.getActionIndex()) == pointerId)) {
+                    isActive = false;
+                    pointerId = MotionEvent.INVALID_POINTER_ID;
+                    engine.release();
+                    if (controllerListener != null) {
+                        dispatchDirectionChange();
+                        controllerListener.onMove(controllerId, engine.getAngle(), engine.getDistance());
+                    }
+                    publish(event.getEventTime());
+                }
+                break;
+            }
+        }
+        return true;
+    }
+
+    private void move(float fingerX, float fingerY, long time) {
+
+        boolean isDirectionChanged = engine.move(fingerX, fingerY, time);
+        if (controllerListener != null) {
+            if (isDirectionChanged) {
+                dispatchDirectionChange();
+            }
+            controllerListener.onMove(controllerId, engine.getAngle(), engine.getDistance());
+        }
+        publish(time);
+    }
+
+    private void dispatchDirectionChange() {
+        int currentDirection = engine.getDirection();
+        int currentAction = (actions != null) ? actions[currentDirection] : -1;
+        controllerListener.onDirectionChange(controllerId, currentDirection, currentAction);
+    }
+
+    /**
+     * Publish the new state and wake up the render thread
+     *
+     * @param time event time in ms
+     */
+    private void publish(long time) {
+        state.publish(engine, isActive, time);
+        LockSupport.unpark(renderThread);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        isRunning = true;
+        isSizeChanged = true;
+        renderThread = new Thread(this, "ControllerSurfaceView");
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        isSizeChanged = true;
+        LockSupport.unpark(renderThread);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+
+        // the surface can not be used after this method returns
+        isRunning = false;
+        LockSupport.unpark(renderThread);
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+    }
+
+    @Override
+    public void run() {
+
+        ControllerState.Snapshot snapshot = new ControllerState.Snapshot();
+        int drawnVersion = -1;
+        SurfaceHolder holder = getHolder();
+
+        while (isRunning) {
+
+            // sleep until new state is published
+            if (state.getVersion() == drawnVersion && !isSizeChanged) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            state.read(snapshot);
+            if (isSizeChanged) {
+                isSizeChanged = false;
+                int bgLeft = (width - bgWidth) / 2;
+                int bgTop = (height - bgHeight) / 2;
+                background.setBounds(bgLeft, bgTop, bgLeft + bgWidth, bgTop + bgHeight);
+            }
+
+            // the surface is not ready yet, wait for surfaceChanged() or the next state instead of spinning
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                LockSupport.parkNanos(this, SURFACE_RETRY_NANOS);
+                continue;
+            }
+            try {
+                int alpha = (int) (255 * (snapshot.isActive ? activeOpacity : inactiveOpacity));
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+                background.setAlpha(alpha);
+                background.draw(canvas);
+
+                int fgLeft = (int) snapshot.knobX;
+                int fgTop = (int) snapshot.knobY;
+                foreground.setBounds(fgLeft, fgTop, fgLeft + fgWidth, fgTop + fgHeight);
+                foreground.setAlpha(alpha);
+                foreground.draw(canvas);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+
+            drawnVersion = snapshot.version;
+            recordLatency(SystemClock.uptimeMillis() - snapshot.time);
+        }
+    }
+
+    /**
+     * Record the latency of a drawn frame, called only from the render thread
+     *
+     * @param latency latency in ms
+     */
+    private void recordLatency(long latency) {
+
+        // apply the reset requests, made by other threads since the last frame
+        int resets = latencyResets;
+        if (resets != handledResets) {
+            handledResets = resets;
+            maxLatencyLocal = 0;
+            totalLatencyLocal = 0;
+            latencyCountLocal = 0;
+        }
+        if (latency > maxLatencyLocal) {
+            maxLatencyLocal = latency;
+        }
+        totalLatencyLocal += latency;
+        latencyCountLocal++;
+
+        int current = latencyVersion;
+        latencyVersion = current + 1;
+        lastLatency = latency;
+        maxLatency = maxLatencyLocal;
+        totalLatency = totalLatencyLocal;
+        latencyCount = latencyCountLocal;
+        publishedResets = resets;
+        latencyVersion = current + 2;
+    }
+
+    /**
+     * Check whether the published values are from before the last reset
+     */
+    private boolean isLatencyReset() {
+        return publishedResets != latencyResets;
+    }
+
+    /**
+     * Get the time between the last drawn event and posting the frame with it
+     *
+     * @return latency in ms
+     */
+    public long getLastLatency() {
+        return isLatencyReset() ? 0 : lastLatency;
+    }
+
+    public long getMaxLatency() {
+        return isLatencyReset() ? 0 : maxLatency;
+    }
+
+    public double getAverageLatency() {
+
+        // the sum and the count are read under the same version, so they are from the same frame
+        int before;
+        long total;
+        long count;
+        boolean isReset;
+        do {
+            before = latencyVersion;
+            total = totalLatency;
+            count = latencyCount;
+            isReset = isLatencyReset();
+        } while ((before & 1) != 0 || before != latencyVersion);
+        return (isReset || count == 0) ? 0 : (double) total / count;
+    }
+
+    /**
+     * Reset the latency values, can be called from any thread. The render
+     * thread starts new values from the next drawn frame, until then the
+     * getters return 0.
+     */
+    public void resetLatency() {
+        latencyResets++;
+    }
+}
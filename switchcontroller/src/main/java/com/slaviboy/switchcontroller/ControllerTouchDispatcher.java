@@ -0,0 +1,217 @@
+package com.slaviboy.switchcontroller;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * ControllerTouchDispatcher Class (Java)
+ * Dispatcher that routes the touch events received by a single surface, for
+ * example the game view, to multiple switch controllers placed over it. Each
+ * pointer that goes down is offered to the controllers from the top most one
+ * whose bounds contain it, and is captured by the first controller it hits. After that all events of
+ * that pointer go only to that controller, so two sticks and buttons can be
+ * used at the same time. Pointer ownership is stored in primitive arrays,
+ * so dispatching does not create any objects.
+ */
+public class ControllerTouchDispatcher implements View.OnTouchListener {
+
+    // maximum number of pointers tracked at the same time
+    public static final int MAX_POINTERS = 16;
+
+    private SwitchController[] controllers;         // attached controllers, in the order they were added
+    private int controllersCount;                   // number of attached controllers
+    private int[] pointerIds;                       // ids of the captured pointers
+    private int[] pointerOwners;                    // index of the controller that captured the pointer with the same index in -pointerIds
+    private int[] surfaceLocation;                  // surface location on screen
+    private int[] controllerLocation;               // controller location on screen
+
+    public ControllerTouchDispatcher() {
+        controllers = new SwitchController[4];
+        pointerIds = new int[MAX_POINTERS];
+        pointerOwners = new int[MAX_POINTERS];
+        surfaceLocation = new int[2];
+        controllerLocation = new int[2];
+        releaseAllPointers();
+    }
+
+    /**
+     * Attach controller, that will receive the events from the surface
+     *
+     * @param controller switch controller
+     */
+    public void addController(SwitchController controller) {
+
+        if (controllersCount == controllers.length) {
+            SwitchController[] temp = new SwitchController[controllers.length * 2];
+            System.arraycopy(controllers, 0, temp, 0, controllersCount);
+            controllers = temp;
+        }
+        controllers[controllersCount++] = controller;
+        controller.setDispatched(true);
+    }
+
+    /**
+     * Detach controller, and let it receive the events by itself
+     *
+     * @param controller switch controller
+     */
+    public void removeController(SwitchController controller) {
+
+        for (int i = 0; i < controllersCount; i++) {
+            if (controllers[i] == controller) {
+                System.arraycopy(controllers, i + 1, controllers, i, controllersCount - i - 1);
+                controllers[--controllersCount] = null;
+                controller.setDispatched(false);
+
+                // drop the pointers of the removed controller, and shift the owner indices after it
+                for (int j = 0; j < MAX_POINTERS; j++) {
+                    if (pointerIds[j] == MotionEvent.INVALID_POINTER_ID) {
+                        continue;
+                    }
+                    if (pointerOwners[j] == i) {
+                        pointerIds[j] = MotionEvent.INVALID_POINTER_ID;
+                    } else if (pointerOwners[j] > i) {
+                        pointerOwners[j]--;
+                    }
+                }
+
+                // the removed controller will not get the up event, so release it
+                if (controller.isActive()) {
+                    long now = SystemClock.uptimeMillis();
+                    MotionEvent cancel = MotionEvent.obtain(now, now, MotionEvent.ACTION_CANCEL, 0, 0, 0);
+                    controller.handleTouchEvent(cancel);
+                    cancel.recycle();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouch(View surface, MotionEvent event) {
+
+        surface.getLocationOnScreen(surfaceLocation);
+
+        int maskedAction = event.getActionMasked();
+        switch (maskedAction) {
+
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+
+                // new gesture, so no pointers are down
+                if (maskedAction == MotionEvent.ACTION_DOWN) {
+                    releaseAllPointers();
+                }
+
+                // offer the pointer to the controllers that contain it, starting from the top most
+                int actionIndex = event.getActionIndex();
+                int pointerId = event.getPointerId(actionIndex);
+                for (int i = controllersCount - 1; i >= 0; i--) {
+                    if (!controllers[i].isActive() && contains(controllers[i], event, actionIndex) &&
+                            dispatch(surface, controllers[i], event)) {
+                        capturePointer(pointerId, i);
+                        break;
+                    }
+                }
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+
+                // each controller finds its own pointer in the event
+                for (int i = 0; i < MAX_POINTERS; i++) {
+                    if (pointerIds[i] != MotionEvent.INVALID_POINTER_ID) {
+                        dispatch(surface, controllers[pointerOwners[i]], event);
+                    }
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP: {
+
+                int index = findPointer(event.getPointerId(event.getActionIndex()));
+                if (index >= 0) {
+                    dispatch(surface, controllers[pointerOwners[index]], event);
+                    pointerIds[index] = MotionEvent.INVALID_POINTER_ID;
+                }
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL: {
+
+                for (int i = 0; i < MAX_POINTERS; i++) {
+                    if (pointerIds[i] != MotionEvent.INVALID_POINTER_ID) {
+                        dispatch(surface, controllers[pointerOwners[i]], event);
+                    }
+                }
+                releaseAllPointers();
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send the event to the controller, with the coordinates translated
+     * to be relative to the controller
+     *
+     * @param surface    view that received the event
+     * @param controller switch controller
+     * @param event      touch event
+     * @return whether the event is used by the controller
+     */
+    private boolean dispatch(View surface, SwitchController controller, MotionEvent event) {
+
+        controller.getLocationOnScreen(controllerLocation);
+        float offsetX = controllerLocation[0] - surfaceLocation[0];
+        float offsetY = controllerLocation[1] - surfaceLocation[1];
+
+        event.offsetLocation(-offsetX, -offsetY);
+        boolean isHandled = controller.handleTouchEvent(event);
+        event.offsetLocation(offsetX, offsetY);
+        return isHandled;
+    }
+
+    /**
+     * Check whether a pointer is inside the controller bounds, the same area
+     * where the controller receives events when it is not dispatched. The
+     * controller location is the one found by the last call to dispatch() or
+     * contains() for the same event.
+     *
+     * @param controller switch controller
+     * @param event      touch event
+     * @param index      pointer index
+     * @return whether the pointer is inside
+     */
+    private boolean contains(SwitchController controller, MotionEvent event, int index) {
+
+        controller.getLocationOnScreen(controllerLocation);
+        float x = event.getX(index) - (controllerLocation[0] - surfaceLocation[0]);
+        float y = event.getY(index) - (controllerLocation[1] - surfaceLocation[1]);
+        return x >= 0 && x < controller.getWidth() && y >= 0 && y < controller.getHeight();
+    }
+
+    private void capturePointer(int pointerId, int owner) {
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            if (pointerIds[i] == MotionEvent.INVALID_POINTER_ID) {
+                pointerIds[i] = pointerId;
+                pointerOwners[i] = owner;
+                return;
+            }
+        }
+    }
+
+    private int findPointer(int pointerId) {
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            if (pointerIds[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void releaseAllPointers() {
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            pointerIds[i] = MotionEvent.INVALID_POINTER_ID;
+        }
+    }
+}
@@ -3,13 +3,14 @@ package com.slaviboy.switchcontroller;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Color;
-import android.graphics.PointF;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.media.Image;
+import android.os.Trace;
 import android.support.constraint.ConstraintLayout;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -17,6 +18,16 @@ import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
+import com.slaviboy.switchcontroller.engine.ControllerSample;
+import com.slaviboy.switchcontroller.engine.ControllerState;
+import com.slaviboy.switchcontroller.engine.DirectionQuantizer;
+import com.slaviboy.switchcontroller.engine.InputPipeline;
+import com.slaviboy.switchcontroller.engine.InputTrace;
+import com.slaviboy.switchcontroller.engine.JoystickEngine;
+import com.slaviboy.switchcontroller.engine.KnobPredictor;
+import com.slaviboy.switchcontroller.engine.LatencyStats;
+import com.slaviboy.switchcontroller.engine.TraceReplayer;
+
 /**
  * Copyright (c) 2019 Stanislav Georgiev. (MIT License)
  * https://github.com/slaviboy
@@ -44,28 +55,59 @@ import android.widget.ImageView;
 public class SwitchController extends ConstraintLayout {
 
     // controller constants -directions
-    public static final int DIRECTION_CENTER = 0;
-    public static final int DIRECTION_LEFT = 1;
-    public static final int DIRECTION_RIGHT = 2;
-    public static final int DIRECTION_UP = 3;
-    public static final int DIRECTION_DOWN = 4;
+    public static final int DIRECTION_CENTER = JoystickEngine.DIRECTION_CENTER;
+    public static final int DIRECTION_LEFT = JoystickEngine.DIRECTION_LEFT;
+    public static final int DIRECTION_RIGHT = JoystickEngine.DIRECTION_RIGHT;
+    public static final int DIRECTION_UP = JoystickEngine.DIRECTION_UP;
+    public static final int DIRECTION_DOWN = JoystickEngine.DIRECTION_DOWN;
+
+    // controller constants -sector of the direction quantizer, when the finger is in the center
+    public static final int SECTOR_CENTER = DirectionQuantizer.SECTOR_CENTER;
+
+    // controller constants -history modes, for the samples batched in each move event
+    public static final int HISTORY_NONE = TraceReplayer.HISTORY_NONE;
+    public static final int HISTORY_TRANSITIONS = TraceReplayer.HISTORY_TRANSITIONS;
+    public static final int HISTORY_COALESCED = TraceReplayer.HISTORY_COALESCED;
 
+    // default number of samples, that a batch can hold between two deliveries
+    public static final int DEFAULT_BATCH_CAPACITY = 64;
+
+    // trace section names, emitted only when latency tracking is enabled
+    private static final String TRACE_TOUCH = "SwitchController.onTouchEvent";
+    private static final String TRACE_DISPATCH = "SwitchController.dispatch";
 
     private float activeOpacity;                    // opacity when the user is using the switch controller
     private float inactiveOpacity;                  // opacity when the user is not using the controller
-    private int currentDirection;                   // current recorded direction
-    private int previousDirection;                  // previous recorded direction
-    private boolean isSticky;                       // if the foreground in is stick to the main four directions, if finger is outside the background
-    private double angle;                           // rotary angle between parent view and current finger position
-    private double distance;                        // finger distance from the center
     private boolean isActive;                       // whether or not the controller is active if finger is pressed down and is in virtual circle
-    private boolean keepInside;                     // whether or not to keep the foreground inside the background
+    private int pointerId;                          // id of the pointer captured by the controller, while it is active
+    private boolean isChanged;                      // whether the knob position, opacity or direction is changed by the current event
+    private int drawnDirection;                     // direction when the controller was last redrawn
+    private float drawnKnobX;                       // foreground x position, last set to the image view
+    private float drawnKnobY;                       // foreground y position, last set to the image view
+    private long skippedFrames;                     // number of events that did not change the output, so redraw was skipped
+    private boolean isDispatched;                   // whether touch events are received from a shared surface, instead of the controller itself
     private int[] actions;                          // attached actions to the controller
     private boolean detectTransparency;             // detect events when finger is on the transparent area outside the background
-    private Const c;                                // object with constant that are changes when the background or foreground sizes are changed
+    private int historyMode;                        // how the historical samples in move events are used
+    private JoystickEngine engine;                  // engine with the math, that turns finger coordinates into knob position, angle, distance and direction
+    private ControllerState state;                  // lock free state, that can be read from other threads
     private ImageView bgImageView;                  // background image view
     private ImageView fgImageView;                  // foreground image view
     private ControllerListener controllerListener;   // attached listener that implement methods, that will be called
+    private BatchListener batchListener;            // attached listener that receives the samples in batches
+    private AxisListener axisListener;              // attached listener that receives the normalized axes
+    private SectorListener sectorListener;          // attached listener that receives the sector changes for 4, 8 or 16 ways
+    private ControllerSample sample;                // batch with the samples since the last delivery
+    private long batchInterval;                     // minimum time between two deliveries in ms, 0 for each frame
+    private long lastBatchTime;                     // last frame time a batch was delivered in ms
+    private boolean isBatchScheduled;               // whether frame callback is posted for delivering the batch
+    private Choreographer.FrameCallback batchCallback; // frame callback that delivers the batch
+    private LatencyStats latencyStats;              // latency of the touch pipeline, null when tracking is disabled
+    private long dispatchEventTime;                 // time of the current event in ns, until the listener is called for it
+    private long pendingFrameEventTime;             // time of the first event in ns, that is not drawn yet
+    private ViewTreeObserver.OnDrawListener drawListener; // listener that records the frame latency
+    private InputTrace inputTrace;                  // trace where the raw touch stream is recorded, null when not recording
+    private KnobPredictor predictor;                // predicts the angle and distance at the next frame deadline, null when disabled
 
     private int controllerId;                       // current controller id
     private static int controllerCounter = 0;       // static id counter
@@ -105,9 +147,9 @@ public class SwitchController extends ConstraintLayout {
         }
         this.activeOpacity = activeOpacity;
         this.inactiveOpacity = inactiveOpacity;
-        this.isSticky = isSticky;
         this.detectTransparency = detectTransparency;
-        this.keepInside = keepInside;
+        engine.setSticky(isSticky);
+        engine.setKeepInside(keepInside);
         setAlpha(inactiveOpacity);
         if (background != null || foreground != null) {
             updateImageViews();
@@ -143,8 +185,13 @@ public class SwitchController extends ConstraintLayout {
             fgImageView = parent.findViewById(R.id.foreground);
 
             // set id only on the first inflation
-            controllerId = controllerCounter;
-            controllerCounter++;
+            controllerId = nextControllerId();
+
+            engine = new JoystickEngine();
+            state = new ControllerState();
+            pointerId = MotionEvent.INVALID_POINTER_ID;
+            drawnKnobX = Float.NaN;
+            drawnKnobY = Float.NaN;
         }
 
 
@@ -160,9 +207,14 @@ public class SwitchController extends ConstraintLayout {
             TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.switch_controller);
             activeOpacity = typedArray.getFloat(R.styleable.switch_controller_active_opacity, 1);
             inactiveOpacity = typedArray.getFloat(R.styleable.switch_controller_inactive_opacity, 1);
-            isSticky = typedArray.getBoolean(R.styleable.switch_controller_is_sticky, false);
+            engine.setSticky(typedArray.getBoolean(R.styleable.switch_controller_is_sticky, false));
             detectTransparency = typedArray.getBoolean(R.styleable.switch_controller_detect_transparency, false);
-            keepInside = typedArray.getBoolean(R.styleable.switch_controller_keep_inside, false);
+            engine.setKeepInside(typedArray.getBoolean(R.styleable.switch_controller_keep_inside, false));
+            historyMode = typedArray.getInt(R.styleable.switch_controller_history_mode, HISTORY_NONE);
+            setDirectionWays(typedArray.getInt(R.styleable.switch_controller_direction_ways, 4),
+                    typedArray.getFloat(R.styleable.switch_controller_direction_hysteresis, 0),
+                    typedArray.getFloat(R.styleable.switch_controller_dead_zone, 0));
+            setPrediction(typedArray.getFloat(R.styleable.switch_controller_prediction_horizon, 0));
             typedArray.recycle();
 
             setAlpha(inactiveOpacity);
@@ -209,11 +261,15 @@ public class SwitchController extends ConstraintLayout {
         fgImageView.setLayoutParams(fgParams);
 
 
-        // set temp constants, that way they are not recalculated each time new onTouch event is called
-        c = new Const(
+        // set engine constants, that way they are not recalculated each time new onTouch event is called
+        engine.setSize(
                 bgParams.width, bgParams.height,
                 fgParams.width, fgParams.height,
                 getWidth(), getHeight());
+
+        // image view positions are changed by the layout, so they are set again on the next event
+        drawnKnobX = Float.NaN;
+        drawnKnobY = Float.NaN;
     }
 
     /**
@@ -242,56 +298,146 @@ public class SwitchController extends ConstraintLayout {
     @Override
     public boolean onTouchEvent(MotionEvent event) {
 
+        // events are received from the shared surface, let them pass to it
+        if (isDispatched) {
+            return false;
+        }
+
+        handleTouchEvent(event);
+        return true;
+    }
+
+    /**
+     * Get the next controller id, the ids are shared by all controller
+     * views, so the listeners can tell them apart
+     *
+     * @return the id
+     */
+    static int nextControllerId() {
+        return controllerCounter++;
+    }
+
+    /**
+     * Handle touch event, with coordinates relative to the controller. The
+     * controller captures the first pointer that goes down inside it, and
+     * ignores all other pointers until the captured one goes up, that way
+     * a second finger can not reset or hijack the controller.
+     *
+     * @param event touch event
+     * @return whether the event is used by the controller
+     */
+    public boolean handleTouchEvent(MotionEvent event) {
+
+        if (inputTrace != null) {
+            recordEvent(event);
+        }
+
+        // without latency tracking, the only cost is the null check
+        LatencyStats stats = latencyStats;
+        if (stats == null) {
+            return processTouchEvent(event);
+        }
+
+        // event times are from the same clock as System.nanoTime(), but only with ms precision
+        long eventTime = event.getEventTime() * 1000000;
+        stats.recordTouch(eventTime, System.nanoTime());
+        dispatchEventTime = eventTime;
+        Trace.beginSection(TRACE_TOUCH);
+        try {
+            return processTouchEvent(event);
+        } finally {
+            Trace.endSection();
+            dispatchEventTime = -1;
+            if (isChanged && pendingFrameEventTime < 0) {
+                pendingFrameEventTime = eventTime;
+            }
+        }
+    }
+
+    /**
+     * Record the raw samples of an event in the input trace, move events are
+     * recorded with their historical samples for all pointers, flagged as
+     * historical, so the replay can use them the same way as the history mode
+     *
+     * @param event touch event
+     */
+    private void recordEvent(MotionEvent event) {
+
+        int maskedAction = event.getActionMasked();
+        if (maskedAction != MotionEvent.ACTION_MOVE) {
+            int pointerIndex = event.getActionIndex();
+            inputTrace.record(event.getEventTime(), maskedAction, event.getPointerId(pointerIndex),
+                    event.getX(pointerIndex), event.getY(pointerIndex));
+            return;
+        }
+
+        int historySize = event.getHistorySize();
+        int pointerCount = event.getPointerCount();
+        for (int i = 0; i < historySize; i++) {
+            for (int j = 0; j < pointerCount; j++) {
+                inputTrace.record(event.getHistoricalEventTime(i), maskedAction, event.getPointerId(j),
+                        event.getHistoricalX(j, i), event.getHistoricalY(j, i), true);
+            }
+        }
+        for (int j = 0; j < pointerCount; j++) {
+            inputTrace.record(event.getEventTime(), maskedAction, event.getPointerId(j), event.getX(j), event.getY(j));
+        }
+    }
+
+    private boolean processTouchEvent(MotionEvent event) {
+
+        boolean isHandled = false;
+        isChanged = false;
         int maskedAction = event.getActionMasked();
         switch (maskedAction) {
 
             case MotionEvent.ACTION_DOWN:
             case MotionEvent.ACTION_POINTER_DOWN: {
 
-                // finger position
-                float x = event.getX();
-                float y = event.getY();
+                // already captured by another finger
+                if (isActive) {
+                    break;
+                }
 
-                if (detectTransparency) {
-                    // detect event on transparent area
+                // finger position
+                int pointerIndex = event.getActionIndex();
+                float x = event.getX(pointerIndex);
+                float y = event.getY(pointerIndex);
 
+                // detect event on transparent area, or on circle area around the background
+                if (detectTransparency || engine.isInside(x, y)) {
                     isActive = true;
+                    isHandled = true;
+                    pointerId = event.getPointerId(pointerIndex);
 
                     // move foreground
-                    move(x, y);
+                    move(x, y, event.getEventTime());
 
                     // change parent opacity to active
-                    setAlpha(activeOpacity);
-                } else {
-
-                    // detect event on circle area around the background
-
-                    // view center point
-                    double centerX = c.centerX;
-                    double centerY = c.centerY;
-
-                    // maximum allowed finger distance from the center
-                    float maxDistance = keepInside ? c.minBgHalf : c.minBgHalf + c.minFgHalf;
-
-                    // check if finger is inside the circle
-                    if (Math.pow(x - centerX, 2) + Math.pow(y - centerY, 2) < Math.pow(maxDistance, 2)) {
-                        isActive = true;
-
-                        // move foreground
-                        move(x, y);
-
-                        // change parent opacity to active
-                        setAlpha(activeOpacity);
-                    }
+                    updateAlpha(activeOpacity);
                 }
 
                 break;
             }
             case MotionEvent.ACTION_MOVE: {
 
+                // only if controller is active
+                if (!isActive) {
+                    break;
+                }
+
+                // captured finger position
+                int pointerIndex = event.findPointerIndex(pointerId);
+                if (pointerIndex < 0) {
+                    break;
+                }
+
                 // move foreground
-                if (isActive) {
-                    move(event.getX(), event.getY());
+                isHandled = true;
+                if (historyMode == HISTORY_NONE) {
+                    move(event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+                } else {
+                    moveWithHistory(event, pointerIndex);
                 }
                 break;
             }
@@ -299,167 +445,326 @@ public class SwitchController extends ConstraintLayout {
             case MotionEvent.ACTION_POINTER_UP:
             case MotionEvent.ACTION_CANCEL: {
 
-                // only if controller is active
-                if (!isActive) {
+                // only if controller is active, and the captured finger is released
+                if (!isActive || (maskedAction != MotionEvent.ACTION_CANCEL &&
+                        event.getPointerId(event.getActionIndex()) != pointerId)) {
                     break;
                 }
 
-                // set previous and current directions
-                previousDirection = currentDirection;
-                currentDirection = DIRECTION_CENTER;
+                // set previous and current directions, and restore foreground position
+                engine.release();
 
                 // call listener if available
                 if (controllerListener != null) {
-                    int currentAction = (actions != null) ? actions[currentDirection] : -1;
-                    controllerListener.onDirectionChange(controllerId, currentDirection, currentAction);
-                    controllerListener.onMove(controllerId, angle, distance);
+                    boolean isTraced = beginDispatch();
+                    dispatchDirectionChange();
+                    controllerListener.onMove(controllerId, engine.getAngle(), engine.getDistance());
+                    endDispatch(isTraced);
+                }
+                if (sectorListener != null && engine.isDirectionSectorChanged()) {
+                    dispatchSectorChange();
+                }
+                if (axisListener != null) {
+                    dispatchAxis();
                 }
+                addSample(event.getEventTime());
+                if (predictor != null) {
+                    predictor.reset();
+                }
+                publishState(false, event.getEventTime());
 
                 // restore foreground position
-                fgImageView.setX(c.middleX);
-                fgImageView.setY(c.middleY);
+                updateKnob();
 
                 // change parent opacity to inactive
-                setAlpha(inactiveOpacity);
+                updateAlpha(inactiveOpacity);
 
                 isActive = false;
+                isHandled = true;
+                pointerId = MotionEvent.INVALID_POINTER_ID;
                 break;
             }
         }
-        invalidate();
 
-        return true;
+        // redraw only if the output is changed
+        if (engine.getDirection() != drawnDirection) {
+            drawnDirection = engine.getDirection();
+            isChanged = true;
+        }
+        if (isChanged) {
+            invalidate();
+        } else {
+            skippedFrames++;
+        }
+
+        return isHandled;
     }
 
     /**
-     * Find the point lying on a line between two points -center and -finger
-     * and located from the center point to a -distance.
+     * Move -foreground depending on current finger coordinates
+     * on screen, given from onTouch events
      *
-     * @param centerX  x coordinates
-     * @param centerY  y coordinates
-     * @param fingerX  x coordinates
-     * @param fingerY  y coordinates
-     * @param distance desired distance from the center
-     * @return
+     * @param fingerX x coordinate
+     * @param fingerY y coordinate
+     * @param time    event time in ms
      */
-    private PointF pointOnLine(double centerX, double centerY,
-                               double fingerX, double fingerY, double distance) {
+    private void move(float fingerX, float fingerY, long time) {
 
-        double ratio = distance / this.distance;
+        // compute foreground position, angle, distance and direction
+        boolean isDirectionChanged = engine.move(fingerX, fingerY, time);
+        if (predictor != null) {
+            predictor.add(time, engine.getDeltaX(), engine.getDeltaY());
+        }
+        updateKnob();
 
-        // point coordinates distant from start point
-        double x = (1 - ratio) * centerX + ratio * fingerX;
-        double y = (1 - ratio) * centerY + ratio * fingerY;
+        // call listener methods
+        if (controllerListener != null) {
+            boolean isTraced = beginDispatch();
 
-        return new PointF((float) x, (float) y);
-    }
+            // if direction is changed
+            if (isDirectionChanged) {
+                dispatchDirectionChange();
+            }
 
+            // if finger is moved
+            controllerListener.onMove(controllerId, engine.getAngle(), engine.getDistance());
+            endDispatch(isTraced);
+        }
+        if (sectorListener != null && engine.isDirectionSectorChanged()) {
+            dispatchSectorChange();
+        }
+        if (axisListener != null) {
+            dispatchAxis();
+        }
+        addSample(time);
+        publishState(true, time);
+    }
 
     /**
-     * Move -foreground depending on current finger coordinates
-     * on screen, given from onTouch events
+     * Move -foreground using all samples from a move event, the historical
+     * samples that are batched by the system since the last event, and the
+     * current one. Depending on the history mode the listener is called
+     * for each direction change or once for the whole event, and onMove()
+     * is called only once with the latest sample.
      *
-     * @param fingerX x coordinate
-     * @param fingerY y coordinate
+     * @param event        move event
+     * @param pointerIndex index of the captured pointer
      */
-    private void move(float fingerX, float fingerY) {
+    private void moveWithHistory(MotionEvent event, int pointerIndex) {
+
+        int startDirection = engine.getDirection();
+        int startSector = engine.getDirectionSector();
+        int historySize = event.getHistorySize();
+        for (int i = 0; i <= historySize; i++) {
 
-        // delta and distance between view center and finger points
-        double deltaX = fingerX - c.centerX;
-        double deltaY = fingerY - c.centerY;
-        distance = Math.sqrt(
-                Math.pow(deltaX, 2) + Math.pow(deltaY, 2));
+            // the current sample comes after all historical samples
+            float x = (i < historySize) ? event.getHistoricalX(pointerIndex, i) : event.getX(pointerIndex);
+            float y = (i < historySize) ? event.getHistoricalY(pointerIndex, i) : event.getY(pointerIndex);
+            long time = (i < historySize) ? event.getHistoricalEventTime(i) : event.getEventTime();
 
-        // maximum foreground distance from center
-        float maxDistance = keepInside ? c.minBgHalf - c.minFgHalf : c.minBgHalf;
+            boolean isDirectionChanged = engine.move(x, y, time);
+            if (predictor != null) {
+                predictor.add(time, engine.getDeltaX(), engine.getDeltaY());
+            }
+            if (isDirectionChanged && historyMode == HISTORY_TRANSITIONS && controllerListener != null) {
+                dispatchDirectionChange();
+            }
+            if (engine.isDirectionSectorChanged() && historyMode == HISTORY_TRANSITIONS && sectorListener != null) {
+                dispatchSectorChange();
+            }
+            addSample(time);
+        }
+        updateKnob();
+
+        if (controllerListener != null) {
+            boolean isTraced = beginDispatch();
 
-        if (Math.abs(distance) > maxDistance) {
+            // if direction is changed, since the previous event
+            if (historyMode == HISTORY_COALESCED && engine.getDirection() != startDirection) {
+                dispatchDirectionChange();
+            }
+
+            // if finger is moved
+            controllerListener.onMove(controllerId, engine.getAngle(), engine.getDistance());
+            endDispatch(isTraced);
+        }
+        if (sectorListener != null && historyMode == HISTORY_COALESCED && engine.getDirectionSector() != startSector) {
+            dispatchSectorChange();
+        }
+        if (axisListener != null) {
+            dispatchAxis();
+        }
+        publishState(true, event.getEventTime());
+    }
 
-            //finger is outside the background area
-            PointF movePoint = pointOnLine(c.centerX, c.centerY,
-                    fingerX, fingerY, maxDistance);
-            fgImageView.setX(movePoint.x - c.fgHalfWidth);
-            fgImageView.setY(movePoint.y - c.fgHalfHeight);
+    /**
+     * Publish the engine state for readers on other threads, with the
+     * predicted angle and distance if prediction is enabled
+     *
+     * @param isActive whether the controller is pressed
+     * @param time     sample time in ms
+     */
+    private void publishState(boolean isActive, long time) {
+        if (predictor != null) {
+            state.publish(engine, predictor, isActive, time);
         } else {
+            state.publish(engine, isActive, time);
+        }
+    }
+
+    /**
+     * Record the dispatch latency for the current event, the first time the
+     * listener is called for it, and begin trace section for the listener calls
+     *
+     * @return whether trace section is started, and should be ended
+     */
+    private boolean beginDispatch() {
+
+        if (latencyStats == null) {
+            return false;
+        }
+        if (dispatchEventTime >= 0) {
+            latencyStats.recordDispatch(dispatchEventTime, System.nanoTime());
+            dispatchEventTime = -1;
+        }
+        Trace.beginSection(TRACE_DISPATCH);
+        return true;
+    }
 
-            //finger is inside the background area - move freely
-            fgImageView.setX(fingerX - c.fgHalfWidth);
-            fgImageView.setY(fingerY - c.fgHalfHeight);
+    private void endDispatch(boolean isTraced) {
+        if (isTraced) {
+            Trace.endSection();
         }
+    }
+
+    /**
+     * Call the sector listener with the sector of the direction quantizer
+     */
+    private void dispatchSectorChange() {
+        boolean isTraced = beginDispatch();
+        sectorListener.onSectorChange(controllerId, engine.getDirectionSector(), engine.getQuantizer().getWays());
+        endDispatch(isTraced);
+    }
 
-        // get rotational angle in degrees
-        angle = angleBetween(c.centerX, c.centerY, fingerX, fingerY);
+    /**
+     * Call the axis listener with the analog output of the engine
+     */
+    private void dispatchAxis() {
+        boolean isTraced = beginDispatch();
+        axisListener.onAxis(controllerId, engine.getAnalogX(), engine.getAnalogY(),
+                engine.getMagnitude(), engine.getAnalogAngle());
+        endDispatch(isTraced);
+    }
 
-        // set last and get the current direction
-        previousDirection = currentDirection;
-        if (-deltaY > Math.abs(deltaX)) {
-            currentDirection = DIRECTION_UP;
-        } else if (deltaY > Math.abs(deltaX)) {
-            currentDirection = DIRECTION_DOWN;
-        } else if (-deltaX > Math.abs(deltaY)) {
-            currentDirection = DIRECTION_LEFT;
-        } else if (deltaX > Math.abs(deltaY)) {
-            currentDirection = DIRECTION_RIGHT;
+    /**
+     * Move the foreground image view to the knob position from the engine,
+     * the view properties are set only if the position is changed, for example
+     * when the knob is pinned to the rim, no RenderNode update is made.
+     */
+    private void updateKnob() {
+
+        float knobX = engine.getKnobX();
+        float knobY = engine.getKnobY();
+        if (drawnKnobX != knobX) {
+            drawnKnobX = knobX;
+            fgImageView.setX(knobX);
+            isChanged = true;
+        }
+        if (drawnKnobY != knobY) {
+            drawnKnobY = knobY;
+            fgImageView.setY(knobY);
+            isChanged = true;
         }
+    }
 
-        // call listener methods
-        if (controllerListener != null) {
+    /**
+     * Set the controller opacity, only if it is changed
+     *
+     * @param alpha new opacity
+     */
+    private void updateAlpha(float alpha) {
+        if (getAlpha() != alpha) {
+            setAlpha(alpha);
+            isChanged = true;
+        }
+    }
 
-            // if direction is changed
-            if (previousDirection != currentDirection) {
-                int currentAction = (actions != null) ? actions[currentDirection] : -1;
-                controllerListener.onDirectionChange(controllerId, currentDirection, currentAction);
-            }
+    /**
+     * Add the current engine state to the batch, and schedule delivery
+     * on the next frame, only if batch listener is attached.
+     *
+     * @param time sample time in ms
+     */
+    private void addSample(long time) {
 
-            // if finger is moved
-            controllerListener.onMove(controllerId, angle, distance);
+        if (batchListener == null) {
+            return;
         }
 
+        sample.add(time, engine.getAngle(), engine.getDistance(), engine.getDirection(),
+                engine.getAnalogX(), engine.getAnalogY());
+        if (!isBatchScheduled) {
+            isBatchScheduled = true;
+            Choreographer.getInstance().postFrameCallback(batchCallback);
+        }
+    }
 
-        // stick the foreground
-        if (isSticky && Math.abs(distance) > c.minBgHalf) {
-            switch (currentDirection) {
+    /**
+     * Deliver the batch with all samples since the last delivery, if the
+     * batch interval is reached, otherwise wait for the next frame.
+     *
+     * @param frameTimeNanos frame time from the choreographer
+     */
+    private void deliverBatch(long frameTimeNanos) {
 
-                case DIRECTION_UP: {
-                    fgImageView.setX(c.upX);
-                    if (keepInside) {
-                        fgImageView.setY(c.upY + c.minFgHalf);
-                    } else {
-                        fgImageView.setY(c.upY);
-                    }
-                }
-                break;
-                case DIRECTION_LEFT: {
+        isBatchScheduled = false;
+        if (batchListener == null || sample.isEmpty()) {
+            return;
+        }
 
-                    fgImageView.setY(c.leftY);
-                    if (keepInside) {
-                        fgImageView.setX(c.leftX + c.minFgHalf);
-                    } else {
-                        fgImageView.setX(c.leftX);
-                    }
-                }
-                break;
-                case DIRECTION_DOWN: {
-                    fgImageView.setX(c.downX);
-                    if (keepInside) {
-                        fgImageView.setY(c.downY - c.minFgHalf);
-                    } else {
-                        fgImageView.setY(c.downY);
-                    }
-                }
-                break;
-                case DIRECTION_RIGHT: {
-                    fgImageView.setY(c.rightY);
-                    if (keepInside) {
-                        fgImageView.setX(c.rightX - c.minFgHalf);
-                    } else {
-                        fgImageView.setX(c.rightX);
-                    }
-                }
-                break;
-            }
+        long frameTime = frameTimeNanos / 1000000;
+        if (frameTime - lastBatchTime < batchInterval) {
+            isBatchScheduled = true;
+            Choreographer.getInstance().postFrameCallback(batchCallback);
+            return;
+        }
+
+        lastBatchTime = frameTime;
+        batchListener.onSamples(controllerId, sample);
+        sample.clear();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (drawListener != null) {
+            getViewTreeObserver().addOnDrawListener(drawListener);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        if (drawListener != null) {
+            getViewTreeObserver().removeOnDrawListener(drawListener);
         }
 
+        // no frames are drawn, so stop waiting for them
+        if (isBatchScheduled) {
+            isBatchScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(batchCallback);
+        }
+    }
+
+    /**
+     * Call the listener with the current direction and the action
+     * attached to it.
+     */
+    private void dispatchDirectionChange() {
+        int currentDirection = engine.getDirection();
+        int currentAction = (actions != null) ? actions[currentDirection] : -1;
+        controllerListener.onDirectionChange(controllerId, currentDirection, currentAction);
     }
 
     /**
@@ -468,7 +773,7 @@ public class SwitchController extends ConstraintLayout {
      * @return
      */
     public String getDirectionAsString() {
-        return getDirectionAsString(currentDirection);
+        return getDirectionAsString(engine.getDirection());
     }
 
     /**
@@ -494,22 +799,6 @@ public class SwitchController extends ConstraintLayout {
     }
 
 
-    /**
-     * Get angle between two point -center of the view and -finger
-     * position on screen
-     *
-     * @param centerX
-     * @param centerY
-     * @param fingerX
-     * @param fingerY
-     * @return
-     */
-    private double angleBetween(double centerX, double centerY, double fingerX, double fingerY) {
-
-        double angleDegree = (Math.atan2(-(fingerY - centerY), fingerX - centerX) * 180 / Math.PI);
-        return (angleDegree < 0) ? angleDegree + 360 : angleDegree;
-    }
-
     /**
      * Update the drawable for background image view
      * @param drawable - new drawable for the view
@@ -531,7 +820,93 @@ public class SwitchController extends ConstraintLayout {
      * @return
      */
     public double getAngle() {
-        return angle;
+        return engine.getAngle();
+    }
+
+    /**
+     * Get current 8-way sector, computed once for each sample, sector 0 is
+     * right and the next sectors follow counterclockwise, 45 degrees each
+     * @return
+     */
+    public int getSector() {
+        return engine.getSector();
+    }
+
+    /**
+     * Get x component of the current unit direction vector, 0 when released
+     * @return
+     */
+    public float getUnitX() {
+        return engine.getUnitX();
+    }
+
+    /**
+     * Get y component of the current unit direction vector, down is positive
+     * and it is 0 when released
+     * @return
+     */
+    public float getUnitY() {
+        return engine.getUnitY();
+    }
+
+    /**
+     * Set whether the touch events are received from a shared surface using
+     * ControllerTouchDispatcher, in that case the controller does not consume
+     * the events it receives directly, so they pass to the surface below
+     * @param isDispatched
+     */
+    public void setDispatched(boolean isDispatched) {
+        this.isDispatched = isDispatched;
+    }
+
+    public boolean isDispatched() {
+        return isDispatched;
+    }
+
+    /**
+     * Get the id of the pointer captured by the controller
+     * @return pointer id, or MotionEvent.INVALID_POINTER_ID if controller is not active
+     */
+    public int getPointerId() {
+        return pointerId;
+    }
+
+    /**
+     * Get whether a pointer is captured by the controller
+     * @return
+     */
+    public boolean isActive() {
+        return isActive;
+    }
+
+    /**
+     * Get the number of touch events, that did not change the knob position,
+     * opacity or direction, so the controller was not redrawn
+     * @return
+     */
+    public long getSkippedFrameCount() {
+        return skippedFrames;
+    }
+
+    public void resetSkippedFrameCount() {
+        skippedFrames = 0;
+    }
+
+    /**
+     * Get the lock free state, that can be polled from any thread,
+     * for example from a render thread on each frame
+     * @return
+     */
+    public ControllerState getState() {
+        return state;
+    }
+
+    /**
+     * Get the engine holding the controller math and state
+     * @return
+     */
+    public JoystickEngine getEngine() {
+        return engine;
     }
 
     /**
@@ -542,15 +917,269 @@ public class SwitchController extends ConstraintLayout {
         this.actions = actions;
     }
 
+    /**
+     * Set how the historical samples, batched in each move event are used,
+     * one of HISTORY_NONE, HISTORY_TRANSITIONS or HISTORY_COALESCED
+     * @param historyMode
+     */
+    public void setHistoryMode(int historyMode) {
+        this.historyMode = historyMode;
+    }
+
+    public int getHistoryMode() {
+        return historyMode;
+    }
+
+    /**
+     * Enable or disable the latency tracking, when enabled the time from the
+     * touch event to receiving it, to calling the listener and to the next
+     * drawn frame are recorded in histograms, the events per second are
+     * counted and trace sections are emitted for the touch processing and
+     * the listener calls. When disabled the cost is a single null check.
+     * @param isEnabled whether to track the latency
+     */
+    public void setLatencyTracking(boolean isEnabled) {
+
+        if (isEnabled == (latencyStats != null)) {
+            return;
+        }
+
+        if (isEnabled) {
+            latencyStats = new LatencyStats();
+            dispatchEventTime = -1;
+            pendingFrameEventTime = -1;
+            drawListener = new ViewTreeObserver.OnDrawListener() {
+                @Override
+                public void onDraw() {
+                    LatencyStats stats = latencyStats;
+                    if (stats != null && pendingFrameEventTime >= 0) {
+                        stats.recordFrame(pendingFrameEventTime, System.nanoTime());
+                        pendingFrameEventTime = -1;
+                    }
+                }
+            };
+            if (isAttachedToWindow()) {
+                getViewTreeObserver().addOnDrawListener(drawListener);
+            }
+        } else {
+            if (isAttachedToWindow()) {
+                getViewTreeObserver().removeOnDrawListener(drawListener);
+            }
+            drawListener = null;
+            latencyStats = null;
+        }
+    }
+
+    public boolean isLatencyTracking() {
+        return latencyStats != null;
+    }
+
+    /**
+     * Get the latency stats, that can be read at any time while tracking is enabled
+     * @return the stats, or null if latency tracking is disabled
+     */
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    /**
+     * Record the raw touch stream received by the controller, with coordinates
+     * relative to the controller, into a binary ring buffer. The trace can be
+     * replayed by TraceReplayer with an engine of the same size, on a plain JVM.
+     * @param inputTrace trace where the samples are recorded, or null to stop recording
+     */
+    public void setInputTrace(InputTrace inputTrace) {
+        this.inputTrace = inputTrace;
+    }
+
+    public InputTrace getInputTrace() {
+        return inputTrace;
+    }
+
+    /**
+     * Set the number of directions, the sample is classified into one of 4, 8 or
+     * 16 equal sectors, starting from right and following counterclockwise. The
+     * sector is available from getDirectionSector() and the SectorListener, while
+     * the direction stays one of the five DIRECTION_* constants for any number of
+     * ways, the main direction closest to the sector, so actions arrays with five
+     * values keep working. Sticky foreground sticks to the main four directions.
+     * @param ways number of directions, 4, 8 or 16
+     * @param hysteresis degrees the finger has to move past a sector boundary, to change the sector
+     * @param deadZone distance from the center as part of the background radius, where direction is center
+     */
+    public void setDirectionWays(int ways, float hysteresis, float deadZone) {
+        engine.setQuantizer(new DirectionQuantizer(ways, hysteresis, deadZone));
+    }
+
+    public int getDirectionWays() {
+        return engine.getQuantizer().getWays();
+    }
+
+    /**
+     * Get the sector for the configured number of ways, in range [0, ways) where 0
+     * is right and the next follow counterclockwise, or SECTOR_CENTER when the finger
+     * is in the dead zone or the controller is released
+     * @return the sector
+     */
+    public int getDirectionSector() {
+        return engine.getDirectionSector();
+    }
+
+    /**
+     * Set listener that is called when the sector for the configured number of
+     * ways is changed, see setDirectionWays()
+     * @param sectorListener - listener or null to remove the current one
+     */
+    public void setSectorListener(SectorListener sectorListener) {
+        this.sectorListener = sectorListener;
+    }
+
+    /**
+     * Set the input pipeline that turns the finger position into analog output, the
+     * distance is normalized to the background radius and passed through the stages,
+     * for example DeadZone, ResponseCurve, ExponentialFilter or OneEuroFilter. The
+     * output is available from getAnalogX(), getAnalogY() and getMagnitude(), and
+     * in the controller state, so all consumers get the same values.
+     * @param pipeline the pipeline, or null for the default one without stages
+     */
+    public void setInputPipeline(InputPipeline pipeline) {
+        engine.setInputPipeline(pipeline != null ? pipeline : new InputPipeline());
+    }
+
+    public InputPipeline getInputPipeline() {
+        return engine.getInputPipeline();
+    }
+
+    /**
+     * Get x axis of the analog output, in range [-1, 1] where right is positive
+     * @return the x axis
+     */
+    public float getAnalogX() {
+        return engine.getAnalogX();
+    }
+
+    /**
+     * Get y axis of the analog output, in range [-1, 1] where down is positive
+     * @return the y axis
+     */
+    public float getAnalogY() {
+        return engine.getAnalogY();
+    }
+
+    /**
+     * Get magnitude of the analog output, in range [0, 1] and 0 when released
+     * @return the magnitude
+     */
+    public float getMagnitude() {
+        return engine.getMagnitude();
+    }
+
+    /**
+     * Predict the angle and distance at the next frame deadline, from the velocity
+     * of the recent samples, so views that draw from the controller state do not
+     * lag behind the finger. The predicted values are published in the controller
+     * state, while the listener and the knob still use the actual finger position.
+     * @param horizon prediction time in ms, usually one frame, or 0 to disable the prediction
+     */
+    public void setPrediction(float horizon) {
+        setPrediction(KnobPredictor.DEFAULT_WINDOW, horizon);
+    }
+
+    /**
+     * Predict the angle and distance at the next frame deadline
+     * @param window number of recent samples used for the velocity, more samples give less jitter but slower response
+     * @param horizon prediction time in ms, or 0 to disable the prediction
+     */
+    public void setPrediction(int window, float horizon) {
+        if (horizon <= 0) {
+            predictor = null;
+        } else if (predictor == null || predictor.getWindow() != window) {
+            predictor = new KnobPredictor(window, horizon);
+        } else {
+            predictor.setHorizon(horizon);
+        }
+    }
+
+    /**
+     * Get the predictor, null when the prediction is disabled
+     * @return the predictor
+     */
+    public KnobPredictor getPredictor() {
+        return predictor;
+    }
+
+    /**
+     * Get the predicted angle at the next frame deadline, or the current
+     * angle if the prediction is disabled or the controller is released
+     * @return the angle (degrees)
+     */
+    public float getPredictedAngle() {
+        return (predictor != null && isActive) ? predictor.getPredictedAngle() : engine.getAngle();
+    }
+
+    /**
+     * Get the predicted finger distance from the center at the next frame deadline,
+     * or the current distance if the prediction is disabled or the controller is released
+     * @return the distance
+     */
+    public float getPredictedDistance() {
+        return (predictor != null && isActive) ? predictor.getPredictedDistance() : engine.getDistance();
+    }
+
 
 
     public void setControllerListner(ControllerListener controllerListener) {
         this.controllerListener = controllerListener;
     }
 
+    /**
+     * Set listener that receives all samples in a batch once per frame
+     * @param batchListener
+     */
+    public void setBatchListener(BatchListener batchListener) {
+        setBatchListener(batchListener, 0, DEFAULT_BATCH_CAPACITY);
+    }
+
+    /**
+     * Set listener that receives all samples in a batch, with the given
+     * minimum interval between two deliveries
+     * @param batchListener - listener or null to remove the current one
+     * @param interval - minimum time between two deliveries in ms, 0 to deliver on each frame
+     * @param capacity - maximum number of samples between two deliveries
+     */
+    public void setBatchListener(BatchListener batchListener, long interval, int capacity) {
+        this.batchListener = batchListener;
+        this.batchInterval = interval;
+
+        if (batchListener != null) {
+            if (sample == null || sample.getCapacity() != capacity) {
+                sample = new ControllerSample(capacity);
+            }
+            if (batchCallback == null) {
+                batchCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        deliverBatch(frameTimeNanos);
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Set listener that receives the normalized axes and the polar form on each
+     * event, so the consumers do not need trigonometry to move in the direction
+     * of the knob
+     * @param axisListener - listener or null to remove the current one
+     */
+    public void setAxisListener(AxisListener axisListener) {
+        this.axisListener = axisListener;
+    }
+
     /**
      * Controller Listener with methods that will be called
-     * for a specific situation
+     * for a specific situation, it can also receive the output
+     * of a recorded input trace using ReplayListener
      */
     public interface ControllerListener {
 
@@ -572,79 +1201,81 @@ public class SwitchController extends ConstraintLayout {
         void onMove(int id, double angle, double distance);
     }
 
-
     /**
-     * Class with temporary constants, that are use by onTouch events,
-     * they are changed only when parents view size is changed, or when
-     * new drawable for -background and -foreground is set and there
-     * size is changed. That way those constants are nor recalculated each
-     * time a new onTouch event is called
+     * Adapter that passes the output of TraceReplayer to a controller
+     * listener, so the same listener can receive both live and replayed
+     * input. It does not use the view, so it works on a plain JVM.
      */
-    private class Const {
-
-        public float centerX;
-        public float centerY;
-        public float fgHalfWidth;
-        public float fgHalfHeight;
-        public float bgHalfWidth;
-        public float bgHalfHeight;
-        public float minBgHalf;
-        public float minFgHalf;
-
-        // foreground direction positions
-        public float middleX;
-        public float middleY;
-        public float leftX;
-        public float leftY;
-        public float rightX;
-        public float rightY;
-        public float upX;
-        public float upY;
-        public float downX;
-        public float downY;
+    public static class ReplayListener implements TraceReplayer.Listener {
 
-        public Const(float bgWidth, float bgHeight, float fgWidth, float fgHeight,
-                     float width, float height) {
+        private final ControllerListener controllerListener;
 
-            // center point is the middle of the view
-            centerX = width / 2;
-            centerY = height / 2;
-
-            // get half foreground view width and height
-            fgHalfWidth = fgWidth / 2;
-            fgHalfHeight = fgHeight / 2;
-
-            // get half background view width and height
-            bgHalfWidth = bgWidth / 2;
-            bgHalfHeight = bgHeight / 2;
+        public ReplayListener(ControllerListener controllerListener) {
+            this.controllerListener = controllerListener;
+        }
 
-            // get the min from background half sizes
-            minBgHalf = Math.min(bgHalfWidth, bgHalfHeight);
-            minFgHalf = Math.min(fgHalfWidth, fgHalfHeight);
+        @Override
+        public void onDirectionChange(int id, int direction, int action) {
+            controllerListener.onDirectionChange(id, direction, action);
+        }
 
-            // foreground positions
+        @Override
+        public void onMove(int id, double angle, double distance) {
+            controllerListener.onMove(id, angle, distance);
+        }
+    }
 
-            // middle position in parent
-            middleX = centerX - fgHalfWidth;
-            middleY = centerY - fgHalfHeight;
+    /**
+     * Listener that receives the sector for the configured number of ways, for
+     * finer directions than the main four reported by the ControllerListener
+     */
+    public interface SectorListener {
 
-            // maximum left position
-            leftX = middleX - minBgHalf;
-            leftY = middleY;
+        /**
+         * Called when the sector is changed
+         *
+         * @param id - controller id, to identify controller for multiple controllers
+         * @param sector - sector in range [0, ways) where 0 is right and the next follow counterclockwise, or SECTOR_CENTER
+         * @param ways - number of sectors 4, 8 or 16
+         */
+        void onSectorChange(int id, int sector, int ways);
+    }
 
-            // maximum right position
-            rightX = middleX + minBgHalf;
-            rightY = middleY;
+    /**
+     * Listener that receives the knob position as analog axes, normalized to the
+     * background radius and passed through the input pipeline, with primitive
+     * values only
+     */
+    public interface AxisListener {
 
-            // maximum up position
-            upX = middleX;
-            upY = middleY - minBgHalf;
+        /**
+         * Called when finger is moving, and with zero axes when it is released
+         *
+         * @param id - controller id, to identify controller for multiple controllers
+         * @param x - x axis in range [-1, 1], right is positive
+         * @param y - y axis in range [-1, 1], down is positive
+         * @param magnitude - length of the (x, y) vector in range [0, 1]
+         * @param angle - angle of the (x, y) vector (degrees), counterclockwise from the x axis,
+         *                or the finger angle when the magnitude is 0
+         */
+        void onAxis(int id, float x, float y, float magnitude, float angle);
+    }
 
-            // maximum down position
-            downX = middleX;
-            downY = middleY + minBgHalf;
+    /**
+     * Listener that receives the controller samples in batches, once per
+     * frame or once per given interval, instead of a call for each sample
+     */
+    public interface BatchListener {
 
-        }
+        /**
+         * Called with all samples since the last call, the batch object is
+         * reused and cleared after the method returns, so it should not be
+         * kept by the listener
+         *
+         * @param id - controller id, to identify controller for multiple controllers
+         * @param sample - batch with the samples, in the order they were received
+         */
+        void onSamples(int id, ControllerSample sample);
     }
 
 
@@ -663,6 +1294,12 @@ public class SwitchController extends ConstraintLayout {
         private boolean isSticky;
         private boolean detectTransparency;
         private boolean keepInside;
+        private int historyMode;
+        private int directionWays;
+        private float directionHysteresis;
+        private float deadZone;
+        private float predictionHorizon;
+        private InputPipeline inputPipeline;
         private int width;
         private int height;
 
@@ -682,6 +1319,8 @@ public class SwitchController extends ConstraintLayout {
             isSticky = false;
             detectTransparency = false;
             keepInside = false;
+            historyMode = HISTORY_NONE;
+            directionWays = 4;
         }
 
         public Builder withForegroundDrawable(Drawable drawable) {
@@ -719,6 +1358,28 @@ public class SwitchController extends ConstraintLayout {
             return this;
         }
 
+        public Builder withHistoryMode(int historyMode) {
+            this.historyMode = historyMode;
+            return this;
+        }
+
+        public Builder withDirectionWays(int ways, float hysteresis, float deadZone) {
+            this.directionWays = ways;
+            this.directionHysteresis = hysteresis;
+            this.deadZone = deadZone;
+            return this;
+        }
+
+        public Builder withPrediction(float horizon) {
+            this.predictionHorizon = horizon;
+            return this;
+        }
+
+        public Builder withInputPipeline(InputPipeline pipeline) {
+            this.inputPipeline = pipeline;
+            return this;
+        }
+
         public Builder withWidth(int width) {
             this.width = width;
             return this;
@@ -735,8 +1396,13 @@ public class SwitchController extends ConstraintLayout {
         }
 
         public SwitchController build() {
-            return new SwitchController(context, parent, width, height, background, foreground,
+            SwitchController switchController = new SwitchController(context, parent, width, height, background, foreground,
                     activeOpacity, inactiveOpacity, isSticky, detectTransparency, keepInside);
+            switchController.setHistoryMode(historyMode);
+            switchController.setDirectionWays(directionWays, directionHysteresis, deadZone);
+            switchController.setPrediction(predictionHorizon);
+            switchController.setInputPipeline(inputPipeline);
+            return switchController;
         }
 
     }
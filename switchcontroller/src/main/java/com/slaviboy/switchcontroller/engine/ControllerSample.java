@@ -0,0 +1,101 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * ControllerSample Class (Java)
+ * Reusable batch with controller samples, stored in parallel primitive
+ * arrays, where the entry at index i in each array belongs to the same
+ * sample. The batch is filled by the controller between two deliveries,
+ * and is cleared after it is delivered, so the same arrays are used for
+ * the whole controller lifetime. If the batch is full, the last entry is
+ * overwritten, so the latest state is never lost.
+ */
+public class ControllerSample {
+
+    public final long[] times;          // sample times in ms, in the MotionEvent.getEventTime() time base
+    public final float[] angles;        // rotational angles (degrees)
+    public final float[] distances;     // finger distances from the center
+    public final int[] directions;      // directions
+    public final float[] axesX;         // x axes in range [-1, 1], normalized to the background radius
+    public final float[] axesY;         // y axes in range [-1, 1] (down is positive), normalized to the background radius
+
+    private int count;                  // number of samples in the batch
+    private int dropped;                // number of samples overwritten, since the batch is full
+
+    public ControllerSample(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, but is " + capacity);
+        }
+        times = new long[capacity];
+        angles = new float[capacity];
+        distances = new float[capacity];
+        directions = new int[capacity];
+        axesX = new float[capacity];
+        axesY = new float[capacity];
+    }
+
+    /**
+     * Add sample to the batch, if the batch is full the last sample
+     * is replaced with the new one.
+     *
+     * @param time      sample time in ms
+     * @param angle     rotational angle (degrees)
+     * @param distance  finger distance from the center
+     * @param direction direction
+     */
+    public void add(long time, float angle, float distance, int direction) {
+        add(time, angle, distance, direction, 0, 0);
+    }
+
+    /**
+     * Add sample to the batch, with the normalized axes, if the batch is
+     * full the last sample is replaced with the new one.
+     *
+     * @param time      sample time in ms
+     * @param angle     rotational angle (degrees)
+     * @param distance  finger distance from the center
+     * @param direction direction
+     * @param axisX     x axis in range [-1, 1]
+     * @param axisY     y axis in range [-1, 1]
+     */
+    public void add(long time, float angle, float distance, int direction, float axisX, float axisY) {
+
+        int index = count;
+        if (count == times.length) {
+            index = count - 1;
+            dropped++;
+        } else {
+            count++;
+        }
+
+        times[index] = time;
+        angles[index] = angle;
+        distances[index] = distance;
+        directions[index] = direction;
+        axesX[index] = axisX;
+        axesY[index] = axisY;
+    }
+
+    /**
+     * Remove all samples from the batch, without releasing the arrays.
+     */
+    public void clear() {
+        count = 0;
+        dropped = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+}
@@ -0,0 +1,181 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * ControllerState Class (Java)
+ * Lock free controller state, that is written by a single thread (the UI thread
+ * receiving the touch events) and can be read from any thread, for example from
+ * a render thread at frame rate. It is implemented as a sequence lock, the version
+ * is odd while the writer is updating the values, and readers retry until they
+ * read all values under the same even version, so they never see the angle from
+ * one sample and the distance from another. Reading does not lock or allocate.
+ */
+public class ControllerState {
+
+    // all fields are volatile, so the reads are not reordered around the version reads
+    private volatile int version;
+    private volatile boolean isActive;
+    private volatile int direction;
+    private volatile int sector;
+    private volatile float unitX;
+    private volatile float unitY;
+    private volatile float angle;
+    private volatile float distance;
+    private volatile float predictedAngle;
+    private volatile float predictedDistance;
+    private volatile float analogX;
+    private volatile float analogY;
+    private volatile float magnitude;
+    private volatile float knobX;
+    private volatile float knobY;
+    private volatile long time;
+
+    /**
+     * Publish new state, must be called only from a single writer thread. The
+     * values are stored as they are, use the engine overloads to publish the
+     * state of a joystick engine.
+     *
+     * @param isActive          whether the controller is pressed
+     * @param direction         direction
+     * @param sector            8-way sector
+     * @param unitX             x component of the unit direction vector
+     * @param unitY             y component of the unit direction vector
+     * @param angle             rotational angle (degrees)
+     * @param distance          finger distance from the center
+     * @param predictedAngle    predicted rotational angle at the next frame deadline (degrees)
+     * @param predictedDistance predicted finger distance from the center at the next frame deadline
+     * @param analogX           x axis from the input pipeline in range [-1, 1]
+     * @param analogY           y axis from the input pipeline in range [-1, 1]
+     * @param magnitude         magnitude from the input pipeline in range [0, 1]
+     * @param knobX             foreground x position
+     * @param knobY             foreground y position
+     * @param time              sample time in ms
+     */
+    public void publish(boolean isActive, int direction, int sector, float unitX, float unitY,
+                        float angle, float distance, float predictedAngle, float predictedDistance,
+                        float analogX, float analogY, float magnitude, float knobX, float knobY, long time) {
+
+        int current = version;
+
+        // odd version, tells the readers that write is in progress
+        version = current + 1;
+
+        this.isActive = isActive;
+        this.direction = direction;
+        this.sector = sector;
+        this.unitX = unitX;
+        this.unitY = unitY;
+        this.angle = angle;
+        this.distance = distance;
+        this.predictedAngle = predictedAngle;
+        this.predictedDistance = predictedDistance;
+        this.analogX = analogX;
+        this.analogY = analogY;
+        this.magnitude = magnitude;
+        this.knobX = knobX;
+        this.knobY = knobY;
+        this.time = time;
+
+        version = current + 2;
+    }
+
+    /**
+     * Publish the current state of the engine.
+     *
+     * @param engine   engine with the state
+     * @param isActive whether the controller is pressed
+     * @param time     sample time in ms
+     */
+    public void publish(JoystickEngine engine, boolean isActive, long time) {
+        float angle = engine.getAngle();
+        float distance = engine.getDistance();
+        publish(isActive, engine.getDirection(), engine.getSector(), engine.getUnitX(), engine.getUnitY(),
+                angle, distance, angle, distance, engine.getAnalogX(), engine.getAnalogY(), engine.getMagnitude(),
+                engine.getKnobX(), engine.getKnobY(), time);
+    }
+
+    /**
+     * Publish the current state of the engine, with the predicted angle and
+     * distance, when the finger is released the actual values are published.
+     *
+     * @param engine    engine with the state
+     * @param predictor predictor with the recent samples of the engine
+     * @param isActive  whether the controller is pressed
+     * @param time      sample time in ms
+     */
+    public void publish(JoystickEngine engine, KnobPredictor predictor, boolean isActive, long time) {
+        float angle = engine.getAngle();
+        float distance = engine.getDistance();
+        publish(isActive, engine.getDirection(), engine.getSector(), engine.getUnitX(), engine.getUnitY(),
+                angle, distance, isActive ? predictor.getPredictedAngle() : angle,
+                isActive ? predictor.getPredictedDistance() : distance, engine.getAnalogX(), engine.getAnalogY(),
+                engine.getMagnitude(), engine.getKnobX(), engine.getKnobY(), time);
+    }
+
+    /**
+     * Read consistent copy of the state into -snapshot, can be called from
+     * any thread, the snapshot object should be reused between calls.
+     *
+     * @param snapshot object where the values are copied
+     * @return the version of the copied state, that is changed on each publish
+     */
+    public int read(Snapshot snapshot) {
+
+        int before;
+        int after;
+        do {
+            before = version;
+            snapshot.isActive = isActive;
+            snapshot.direction = direction;
+            snapshot.sector = sector;
+            snapshot.unitX = unitX;
+            snapshot.unitY = unitY;
+            snapshot.angle = angle;
+            snapshot.distance = distance;
+            snapshot.predictedAngle = predictedAngle;
+            snapshot.predictedDistance = predictedDistance;
+            snapshot.analogX = analogX;
+            snapshot.analogY = analogY;
+            snapshot.magnitude = magnitude;
+            snapshot.knobX = knobX;
+            snapshot.knobY = knobY;
+            snapshot.time = time;
+            after = version;
+        } while ((before & 1) != 0 || before != after);
+
+        snapshot.version = before;
+        return before;
+    }
+
+    /**
+     * Get the current version, can be used to check if the state is
+     * changed since the last read, without reading it.
+     *
+     * @return the version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Plain copy of the state, owned by the reader thread.
+     */
+    public static class Snapshot {
+
+        public int version;             // version of the state when copied
+        public boolean isActive;        // whether the controller is pressed
+        public int direction;           // direction
+        public int sector;              // 8-way sector, 0 is right and the next follow counterclockwise
+        public float unitX;             // x component of the unit direction vector, 0 when released
+        public float unitY;             // y component of the unit direction vector (down is positive), 0 when released
+        public float angle;             // rotational angle (degrees)
+        public float distance;          // finger distance from the center
+        public float predictedAngle;    // predicted angle at the next frame deadline, same as the angle without predictor
+        public float predictedDistance; // predicted distance at the next frame deadline, same as the distance without predictor
+        public float analogX;           // x axis from the input pipeline in range [-1, 1], 0 when released
+        public float analogY;           // y axis from the input pipeline in range [-1, 1] (down is positive), 0 when released
+        public float magnitude;         // magnitude from the input pipeline in range [0, 1], 0 when released
+        public float knobX;             // foreground x position
+        public float knobY;             // foreground y position
+        public long time;               // sample time in ms
+    }
+}
@@ -0,0 +1,89 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * DeadZone Class (Java)
+ * Input pipeline stage that ignores small movements around the center, and
+ * reaches full output before the rim. The range between the inner and the
+ * outer edge is scaled back to [0, 1], so the output starts from 0 at the edge
+ * of the dead zone instead of jumping. The radial dead zone is applied to the
+ * magnitude and keeps the direction, while the axial dead zone is applied to
+ * each axis separately, which snaps movements close to an axis onto it.
+ */
+public class DeadZone implements InputPipeline.Stage {
+
+    // dead zone shapes
+    public static final int RADIAL = 0;
+    public static final int AXIAL = 1;
+
+    private final int type;                         // RADIAL or AXIAL
+    private final float inner;                      // values below it are 0
+    private final float outer;                      // values above it are 1
+    private final float scale;                      // 1 / (outer - inner), precomputed
+
+    /**
+     * Constructor
+     *
+     * @param type  RADIAL or AXIAL
+     * @param inner values below it are set to 0, in range [0, 1)
+     * @param outer values above it are set to 1, in range (inner, 1]
+     */
+    public DeadZone(int type, float inner, float outer) {
+
+        if (type != RADIAL && type != AXIAL) {
+            throw new IllegalArgumentException("Unknown dead zone type " + type);
+        }
+        if (inner < 0 || outer > 1 || inner >= outer) {
+            throw new IllegalArgumentException("Dead zone must have 0 <= inner < outer <= 1, but was " +
+                    inner + ", " + outer);
+        }
+        this.type = type;
+        this.inner = inner;
+        this.outer = outer;
+        scale = 1 / (outer - inner);
+    }
+
+    @Override
+    public void apply(InputPipeline pipeline, long time) {
+        if (type == RADIAL) {
+            pipeline.setMagnitude(rescale(pipeline.getMagnitude()));
+        } else {
+            float x = pipeline.getX();
+            float y = pipeline.getY();
+            pipeline.set(x < 0 ? -rescale(-x) : rescale(x), y < 0 ? -rescale(-y) : rescale(y));
+
+            // both axes can reach 1 on the diagonals
+            if (pipeline.getMagnitude() > 1) {
+                pipeline.setMagnitude(1);
+            }
+        }
+    }
+
+    /**
+     * Rescale value from [inner, outer] to [0, 1]
+     *
+     * @param value non negative value
+     * @return the rescaled value
+     */
+    private float rescale(float value) {
+        if (value <= inner) {
+            return 0;
+        }
+        return Math.min(1, (value - inner) * scale);
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public float getInner() {
+        return inner;
+    }
+
+    public float getOuter() {
+        return outer;
+    }
+}
@@ -0,0 +1,202 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * DirectionQuantizer Class (Java)
+ * Splits the controller into 4, 8 or 16 equal sectors and classifies each sample
+ * into one of them, sector 0 is right and the next sectors follow counterclockwise.
+ * Samples closer to the center than the dead zone are classified as center. With
+ * hysteresis the current sector is kept until the finger moves the given number
+ * of degrees past its boundary, and the dead zone is left only when the finger is
+ * DEAD_ZONE_HYSTERESIS past its edge, so jitter around a boundary does not flip
+ * the sector on each sample. Next to the sector, the quantizer keeps direction
+ * that is always one of the five DIRECTION_* constants of the engine, for more
+ * than 4 ways it is the main direction closest to the sector, so arrays indexed
+ * by the direction keep working with any number of ways.
+ */
+public class DirectionQuantizer {
+
+    // sector when the finger is in the dead zone, or the controller is released
+    public static final int SECTOR_CENTER = -1;
+
+    // distance past the edge of the dead zone as part of the radius, before the center is left
+    public static final float DEAD_ZONE_HYSTERESIS = 0.05f;
+
+    // sector for each of the four main directions, indexed by the direction
+    private static final int[] DIRECTION_SECTORS = {
+            SECTOR_CENTER,  // center
+            2,              // left
+            0,              // right
+            1,              // up
+            3               // down
+    };
+
+    // direction for each of the four main sectors, indexed by the sector
+    private static final int[] SECTOR_DIRECTIONS = {
+            JoystickEngine.DIRECTION_RIGHT,
+            JoystickEngine.DIRECTION_UP,
+            JoystickEngine.DIRECTION_LEFT,
+            JoystickEngine.DIRECTION_DOWN
+    };
+
+    private final int ways;                         // number of sectors 4, 8 or 16
+    private final float sectorWidth;                // sector width in degrees
+    private final float hysteresis;                 // degrees past the sector boundary, before the sector is changed
+    private final float deadZone;                   // distance from the center as part of the radius, classified as center
+    private int sector;                             // current sector
+    private int direction;                          // current main direction, one of the DIRECTION_* constants
+
+    public DirectionQuantizer() {
+        this(4, 0, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ways       number of sectors, 4, 8 or 16
+     * @param hysteresis degrees past the sector boundary, before the sector is changed
+     * @param deadZone   distance from the center as part of the radius in range [0, 1), that is classified as center
+     */
+    public DirectionQuantizer(int ways, float hysteresis, float deadZone) {
+
+        if (ways != 4 && ways != 8 && ways != 16) {
+            throw new IllegalArgumentException("Number of ways must be 4, 8 or 16, but was " + ways);
+        }
+        this.ways = ways;
+        this.sectorWidth = 360f / ways;
+        this.hysteresis = hysteresis;
+        this.deadZone = deadZone;
+        sector = SECTOR_CENTER;
+        direction = JoystickEngine.DIRECTION_CENTER;
+    }
+
+    /**
+     * Classify sample into a sector and a main direction, the deltas are used
+     * for the main sectors of 4 and 8 ways, and the angle for 16 ways and the
+     * hysteresis. If the finger is exactly on the center or on a boundary
+     * between the four main sectors, the current sector is kept. The direction
+     * is available from getDirection().
+     *
+     * @param deltaX   finger x distance from the center
+     * @param deltaY   finger y distance from the center (down is positive)
+     * @param distance finger distance from the center, as part of the radius
+     * @param angle    rotational angle in degrees, counterclockwise from the x axis
+     * @return the sector, or SECTOR_CENTER
+     */
+    public int quantize(float deltaX, float deltaY, float distance, float angle) {
+
+        if (deadZone > 0) {
+            if (distance < deadZone) {
+                sector = SECTOR_CENTER;
+                direction = JoystickEngine.DIRECTION_CENTER;
+                return sector;
+            }
+
+            // stay in the center, until the finger is far enough past the edge of the dead zone
+            if (sector == SECTOR_CENTER && distance < deadZone + DEAD_ZONE_HYSTERESIS) {
+                return sector;
+            }
+        }
+        if (distance == 0) {
+            return sector;
+        }
+
+        int candidate;
+        if (ways == 4) {
+            int direction = JoystickEngine.direction(deltaX, deltaY, JoystickEngine.DIRECTION_CENTER);
+            if (direction == JoystickEngine.DIRECTION_CENTER) {
+                return sector;
+            }
+            candidate = DIRECTION_SECTORS[direction];
+        } else if (ways == 8) {
+            candidate = JoystickEngine.sector(deltaX, deltaY);
+        } else {
+            candidate = (int) ((angle + sectorWidth / 2) / sectorWidth) % ways;
+        }
+
+        // keep the current sector, until the angle is far enough past its boundary
+        if (candidate != sector && sector != SECTOR_CENTER && hysteresis > 0) {
+            float difference = Math.abs(angle - sector * sectorWidth);
+            if (difference > 180) {
+                difference = 360 - difference;
+            }
+            if (difference <= sectorWidth / 2 + hysteresis) {
+                return sector;
+            }
+        }
+
+        sector = candidate;
+        direction = mainDirection(candidate, deltaX, deltaY);
+        return sector;
+    }
+
+    /**
+     * Get the main direction for a sector, sectors between two main directions
+     * get the closer one, and diagonal sectors keep the current direction if it
+     * is one of the two next to them, so moving along a diagonal does not flip
+     * the direction.
+     *
+     * @param sector the sector
+     * @param deltaX finger x distance from the center
+     * @param deltaY finger y distance from the center (down is positive)
+     * @return the main direction
+     */
+    private int mainDirection(int sector, float deltaX, float deltaY) {
+
+        int quarter = ways / 4;
+        int main = sector / quarter;
+        int offset = sector % quarter;
+        int next = (main + 1) % 4;
+        if (offset * 2 < quarter) {
+            return SECTOR_DIRECTIONS[main];
+        } else if (offset * 2 > quarter) {
+            return SECTOR_DIRECTIONS[next];
+        }
+
+        // diagonal sector, keep the current direction or pick the closer one from the deltas
+        if (direction == SECTOR_DIRECTIONS[main] || direction == SECTOR_DIRECTIONS[next]) {
+            return direction;
+        }
+        int fromDeltas = JoystickEngine.direction(deltaX, deltaY, SECTOR_DIRECTIONS[main]);
+        return (fromDeltas == SECTOR_DIRECTIONS[next]) ? fromDeltas : SECTOR_DIRECTIONS[main];
+    }
+
+    /**
+     * Reset the sector and the direction to the center, when the controller is released
+     */
+    public void reset() {
+        sector = SECTOR_CENTER;
+        direction = JoystickEngine.DIRECTION_CENTER;
+    }
+
+    /**
+     * Get the sector of the last sample, in range [0, ways) where 0 is right and
+     * the next follow counterclockwise, or SECTOR_CENTER
+     *
+     * @return the sector
+     */
+    public int getSector() {
+        return sector;
+    }
+
+    /**
+     * Get the main direction of the last sample, one of the DIRECTION_* constants
+     * of the engine, for 4 ways it matches the sector
+     *
+     * @return the direction
+     */
+    public int getDirection() {
+        return direction;
+    }
+
+    public int getWays() {
+        return ways;
+    }
+
+    public float getHysteresis() {
+        return hysteresis;
+    }
+
+    public float getDeadZone() {
+        return deadZone;
+    }
+}
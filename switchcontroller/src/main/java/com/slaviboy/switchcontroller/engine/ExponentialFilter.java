@@ -0,0 +1,52 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * ExponentialFilter Class (Java)
+ * Input pipeline stage that smooths the axes with an exponential moving
+ * average, each output moves a fixed part of the way to the new sample.
+ * It is the cheapest filter, but the lag is the same for slow and fast
+ * movements, use OneEuroFilter when fast movements should not lag.
+ */
+public class ExponentialFilter implements InputPipeline.Stage {
+
+    private final float alpha;                      // part of the way moved to the new sample, in range (0, 1]
+    private boolean hasValue;                       // whether a sample was received since the last reset
+    private float x;                                // filtered x axis
+    private float y;                                // filtered y axis
+
+    /**
+     * Constructor
+     *
+     * @param alpha part of the way moved to each new sample, 1 disables the smoothing
+     */
+    public ExponentialFilter(float alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("Alpha must be in range (0, 1], but was " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    @Override
+    public void apply(InputPipeline pipeline, long time) {
+
+        // the first sample after reset is not smoothed, so the output does not start from the center
+        if (hasValue) {
+            x += alpha * (pipeline.getX() - x);
+            y += alpha * (pipeline.getY() - y);
+        } else {
+            x = pipeline.getX();
+            y = pipeline.getY();
+            hasValue = true;
+        }
+        pipeline.set(x, y);
+    }
+
+    @Override
+    public void reset() {
+        hasValue = false;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+}
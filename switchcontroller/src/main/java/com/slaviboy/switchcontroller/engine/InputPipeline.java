@@ -0,0 +1,124 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * InputPipeline Class (Java)
+ * Turns the finger distance from the center into analog output, that is the same
+ * for all consumers. The deltas are normalized to the background radius, so the
+ * x and y axes are in range [-1, 1] and the magnitude in range [0, 1], and then
+ * passed through the stages in the order they are given, for example dead zone,
+ * response curve and smoothing filter. The stages change the values of the
+ * pipeline in place, so processing a sample does not create any objects.
+ */
+public class InputPipeline {
+
+    private final Stage[] stages;                   // stages applied in order, after the normalization
+    private float x;                                // x axis in range [-1, 1], right is positive
+    private float y;                                // y axis in range [-1, 1], down is positive
+    private float magnitude;                        // length of the (x, y) vector in range [0, 1]
+
+    /**
+     * Single step of the pipeline, that reads and changes the output values
+     */
+    public interface Stage {
+
+        /**
+         * Change the values of the pipeline, with set() or setMagnitude()
+         *
+         * @param pipeline the pipeline with the values from the previous stage
+         * @param time     sample time in ms
+         */
+        void apply(InputPipeline pipeline, long time);
+
+        /**
+         * Clear any state kept between samples, when the finger is released
+         */
+        void reset();
+    }
+
+    /**
+     * Constructor
+     *
+     * @param stages stages applied in order, none to get only the normalized values
+     */
+    public InputPipeline(Stage... stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Process sample, the result is available from getX(), getY() and getMagnitude()
+     *
+     * @param deltaX finger x distance from the center
+     * @param deltaY finger y distance from the center
+     * @param radius background radius, distances above it are clamped to magnitude 1
+     * @param time   sample time in ms
+     */
+    public void process(float deltaX, float deltaY, float radius, long time) {
+
+        if (radius > 0) {
+            set(deltaX / radius, deltaY / radius);
+            if (magnitude > 1) {
+                setMagnitude(1);
+            }
+        } else {
+            set(0, 0);
+        }
+
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].apply(this, time);
+        }
+    }
+
+    /**
+     * Set zero output and reset all stages, when the finger is released
+     */
+    public void reset() {
+        x = 0;
+        y = 0;
+        magnitude = 0;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].reset();
+        }
+    }
+
+    /**
+     * Set the axes, and compute the magnitude from them
+     *
+     * @param x x axis
+     * @param y y axis
+     */
+    public void set(float x, float y) {
+        this.x = x;
+        this.y = y;
+        magnitude = (float) Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Set the magnitude, and scale the axes without changing the direction
+     *
+     * @param magnitude new magnitude
+     */
+    public void setMagnitude(float magnitude) {
+        if (this.magnitude > 0) {
+            float scale = magnitude / this.magnitude;
+            x *= scale;
+            y *= scale;
+            this.magnitude = magnitude;
+        }
+    }
+
+    public Stage[] getStages() {
+        return stages;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getMagnitude() {
+        return magnitude;
+    }
+}
@@ -0,0 +1,258 @@
+package com.slaviboy.switchcontroller.engine;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * InputTrace Class (Java)
+ * Compact binary ring buffer with the raw touch stream received by a controller.
+ * Each record has the event time, the masked action, whether it is a historical
+ * sample of a move event, the pointer id and the coordinates relative to the
+ * controller, packed in RECORD_SIZE bytes of a single
+ * preallocated buffer, so recording does not create any objects. When the buffer
+ * is full the oldest records are overwritten. The trace can be saved to a stream
+ * and loaded back, and replayed by TraceReplayer on a plain JVM.
+ */
+public class InputTrace {
+
+    // actions, same values as the masked MotionEvent actions
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+
+    // bit of the action byte, set for the historical samples of a move event, that are followed by its current sample
+    private static final int FLAG_HISTORICAL = 0x80;
+    private static final int ACTION_MASK = 0x7f;
+
+    // record layout: time (8 bytes), action and flags (1 byte), pointer id (1 byte), x (4 bytes), y (4 bytes)
+    public static final int RECORD_SIZE = 18;
+    private static final int OFFSET_TIME = 0;
+    private static final int OFFSET_ACTION = 8;
+    private static final int OFFSET_POINTER = 9;
+    private static final int OFFSET_X = 10;
+    private static final int OFFSET_Y = 14;
+
+    // stream header
+    private static final int MAGIC = 0x53435452;
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_FLAGS = 1;
+
+    // maximum number of records in a stream, larger counts are treated as corrupted
+    public static final int MAX_RECORDS = 1 << 20;
+
+    // records read at a time, the buffer grows only as the records actually arrive
+    private static final int READ_CHUNK = 4096;
+
+    private final ByteBuffer buffer;                // records, RECORD_SIZE bytes each
+    private final int capacity;                     // maximum number of records
+    private int start;                              // position of the oldest record
+    private int count;                              // number of records
+    private long overwritten;                       // number of records overwritten since the last clear
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximum number of records, before the oldest are overwritten
+     */
+    public InputTrace(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, but was " + capacity);
+        }
+        this.capacity = capacity;
+        buffer = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    }
+
+    /**
+     * Constructor, for trace with records that are already in -bytes
+     *
+     * @param bytes records, from the oldest to the newest
+     * @param count number of records
+     */
+    private InputTrace(byte[] bytes, int count) {
+        this.capacity = Math.max(1, count);
+        this.count = count;
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Record touch sample, that is the current sample of its event
+     *
+     * @param time      event time in ms
+     * @param action    masked action, one of the ACTION_* constants
+     * @param pointerId pointer id
+     * @param x         x coordinate relative to the controller
+     * @param y         y coordinate relative to the controller
+     */
+    public void record(long time, int action, int pointerId, float x, float y) {
+        record(time, action, pointerId, x, y, false);
+    }
+
+    /**
+     * Record touch sample, overwriting the oldest record if the buffer is full
+     *
+     * @param time         event time in ms
+     * @param action       masked action, one of the ACTION_* constants
+     * @param pointerId    pointer id
+     * @param x            x coordinate relative to the controller
+     * @param y            y coordinate relative to the controller
+     * @param isHistorical whether it is a historical sample of a move event, and the event has more samples
+     */
+    public void record(long time, int action, int pointerId, float x, float y, boolean isHistorical) {
+
+        int position;
+        if (count < capacity) {
+            position = (start + count) % capacity;
+            count++;
+        } else {
+            position = start;
+            start = (start + 1) % capacity;
+            overwritten++;
+        }
+
+        int offset = position * RECORD_SIZE;
+        buffer.putLong(offset + OFFSET_TIME, time);
+        buffer.put(offset + OFFSET_ACTION, (byte) (isHistorical ? action | FLAG_HISTORICAL : action));
+        buffer.put(offset + OFFSET_POINTER, (byte) pointerId);
+        buffer.putFloat(offset + OFFSET_X, x);
+        buffer.putFloat(offset + OFFSET_Y, y);
+    }
+
+    /**
+     * Get the byte offset of a record
+     *
+     * @param index record index, 0 is the oldest record
+     * @return the offset
+     */
+    private int offsetOf(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + count);
+        }
+        return ((start + index) % capacity) * RECORD_SIZE;
+    }
+
+    public long getTime(int index) {
+        return buffer.getLong(offsetOf(index) + OFFSET_TIME);
+    }
+
+    public int getAction(int index) {
+        return buffer.get(offsetOf(index) + OFFSET_ACTION) & ACTION_MASK;
+    }
+
+    /**
+     * Check whether a record is a historical sample of a move event, the
+     * last sample of each event is its current sample, that is not historical
+     *
+     * @param index record index, 0 is the oldest record
+     * @return whether the record is historical
+     */
+    public boolean isHistorical(int index) {
+        return (buffer.get(offsetOf(index) + OFFSET_ACTION) & FLAG_HISTORICAL) != 0;
+    }
+
+    public int getPointerId(int index) {
+        return buffer.get(offsetOf(index) + OFFSET_POINTER);
+    }
+
+    public float getX(int index) {
+        return buffer.getFloat(offsetOf(index) + OFFSET_X);
+    }
+
+    public float getY(int index) {
+        return buffer.getFloat(offsetOf(index) + OFFSET_Y);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of records that were overwritten, since the buffer was full
+     *
+     * @return number of lost records
+     */
+    public long getOverwritten() {
+        return overwritten;
+    }
+
+    public void clear() {
+        start = 0;
+        count = 0;
+        overwritten = 0;
+    }
+
+    /**
+     * Write the records to a stream, from the oldest to the newest
+     *
+     * @param out the stream
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            int offset = offsetOf(i);
+            data.write(buffer.array(), buffer.arrayOffset() + offset, RECORD_SIZE);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read trace written by writeTo(), the capacity is the number of records.
+     * Traces of the first version have no historical flags, so each of their
+     * samples is replayed as a separate event.
+     *
+     * @param in the stream
+     * @return the trace
+     * @throws IOException if reading from the stream fails, or it does not hold a valid trace
+     */
+    public static InputTrace readFrom(InputStream in) throws IOException {
+
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Stream does not hold input trace");
+        }
+        int version = data.readInt();
+        if (version != VERSION && version != VERSION_WITHOUT_FLAGS) {
+            throw new IOException("Unsupported input trace version " + version);
+        }
+
+        int count = data.readInt();
+        if (count < 0 || count > MAX_RECORDS) {
+            throw new IOException("Invalid input trace record count " + count);
+        }
+
+        // the count is not trusted for the allocation, a truncated stream fails before the whole buffer is allocated
+        byte[] bytes = new byte[Math.max(1, Math.min(count, READ_CHUNK)) * RECORD_SIZE];
+        int read = 0;
+        while (read < count) {
+            int chunk = Math.min(count - read, READ_CHUNK);
+            int end = (read + chunk) * RECORD_SIZE;
+            if (end > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(Math.max(end, bytes.length * 2), count * RECORD_SIZE));
+            }
+            try {
+                data.readFully(bytes, read * RECORD_SIZE, chunk * RECORD_SIZE);
+            } catch (EOFException e) {
+                throw new IOException("Input trace with " + count + " records ends before record " + read, e);
+            }
+            read += chunk;
+        }
+        return new InputTrace(bytes, count);
+    }
+}
@@ -0,0 +1,574 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * Copyright (c) 2019 Stanislav Georgiev. (MIT License)
+ * https://github.com/slaviboy
+ * <p>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * - The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * - The Software is provided "as is", without warranty of any kind, express or
+ * implied, including but not limited to the warranties of merchantability,
+ * fitness for a particular purpose and noninfringement. In no event shall the
+ * authors or copyright holders be liable for any claim, damages or other
+ * liability, whether in an action of contract, tort or otherwise, arising from,
+ * out of or in connection with the Software or the use or other dealings in the
+ * Software.
+ * <p>
+ * JoystickEngine Class (Java)
+ * Framework free class with the math behind the switch controller, it turns raw
+ * finger coordinates into clamped foreground(knob) position, angle, distance and
+ * direction. It does not depend on any Android classes, so it can be unit tested
+ * and benchmarked on a plain JVM, and it does not create any objects per sample.
+ */
+public class JoystickEngine {
+
+    // controller constants -directions
+    public static final int DIRECTION_CENTER = 0;
+    public static final int DIRECTION_LEFT = 1;
+    public static final int DIRECTION_RIGHT = 2;
+    public static final int DIRECTION_UP = 3;
+    public static final int DIRECTION_DOWN = 4;
+
+    // number of sectors, sector 0 is right and the next sectors follow counterclockwise, 45 degrees each
+    public static final int SECTORS_COUNT = 8;
+
+    // tangents of the sector boundaries, relative to the horizontal axis
+    private static final float TAN_22_5 = (float) Math.tan(Math.toRadians(22.5));
+    private static final float TAN_67_5 = (float) Math.tan(Math.toRadians(67.5));
+
+    // sine of the largest angle between the analog output and the finger, that is treated as the same direction
+    private static final float ANGLE_EPSILON = 1e-5f;
+
+    // sector for each quantised delta, the index bits are (left, down, steep, diagonal or steep)
+    private static final int[] SECTORS = {
+            0, 1, 2, 2,     // right, up
+            0, 7, 6, 6,     // right, down
+            4, 3, 2, 2,     // left, up
+            4, 5, 6, 6      // left, down
+    };
+
+    private boolean isSticky;                       // if the foreground in is stick to the main four directions, if finger is outside the background
+    private boolean keepInside;                     // whether or not to keep the foreground inside the background
+    private DirectionQuantizer quantizer;           // classifies the samples into directions
+    private InputPipeline pipeline;                 // turns the deltas into analog output
+
+    // constants that are changed only when the background or foreground sizes are changed
+    private float centerX;
+    private float centerY;
+    private float fgHalfWidth;
+    private float fgHalfHeight;
+    private float minBgHalf;
+    private float minFgHalf;
+
+    // foreground direction positions
+    private float middleX;
+    private float middleY;
+    private float leftX;
+    private float leftY;
+    private float rightX;
+    private float rightY;
+    private float upX;
+    private float upY;
+    private float downX;
+    private float downY;
+
+    // state, updated on each sample
+    private float deltaX;                           // finger x distance from the center
+    private float deltaY;                           // finger y distance from the center
+    private float angle;                            // rotary angle between center and current finger position (degrees)
+    private float distance;                         // finger distance from the center
+    private float knobX;                            // foreground x position (left)
+    private float knobY;                            // foreground y position (top)
+    private float lineX;                            // x coordinate of the last point found by pointOnLine()
+    private float lineY;                            // y coordinate of the last point found by pointOnLine()
+    private int sector;                             // 8-way sector of the finger, kept when it is released
+    private float unitX;                            // x component of the unit direction vector, 0 when released
+    private float unitY;                            // y component of the unit direction vector (down is positive), 0 when released
+    private float analogX;                          // x axis from the input pipeline in range [-1, 1], 0 when released
+    private float analogY;                          // y axis from the input pipeline in range [-1, 1] (down is positive), 0 when released
+    private float magnitude;                        // magnitude from the input pipeline in range [0, 1], 0 when released
+    private float analogAngle;                      // angle of the analog output (degrees), the finger angle when the magnitude is 0
+    private int directionSector;                    // sector of the direction quantizer, or DirectionQuantizer.SECTOR_CENTER
+    private int previousDirectionSector;            // previous sector of the direction quantizer
+    private int currentDirection;                   // current recorded direction
+    private int previousDirection;                  // previous recorded direction
+
+    public JoystickEngine() {
+        this(false, false);
+    }
+
+    public JoystickEngine(boolean isSticky, boolean keepInside) {
+        this.isSticky = isSticky;
+        this.keepInside = keepInside;
+        quantizer = new DirectionQuantizer();
+        directionSector = DirectionQuantizer.SECTOR_CENTER;
+        previousDirectionSector = DirectionQuantizer.SECTOR_CENTER;
+        pipeline = new InputPipeline();
+    }
+
+    /**
+     * Set the sizes for the background, foreground and the view holding them, and
+     * calculate the constants used by move(). That way they are not recalculated
+     * each time new sample is received.
+     *
+     * @param bgWidth  background width
+     * @param bgHeight background height
+     * @param fgWidth  foreground width
+     * @param fgHeight foreground height
+     * @param width    parent width
+     * @param height   parent height
+     */
+    public void setSize(float bgWidth, float bgHeight, float fgWidth, float fgHeight,
+                        float width, float height) {
+
+        // center point is the middle of the view
+        centerX = width / 2;
+        centerY = height / 2;
+
+        // get half foreground view width and height
+        fgHalfWidth = fgWidth / 2;
+        fgHalfHeight = fgHeight / 2;
+
+        // get the min from background and foreground half sizes
+        minBgHalf = Math.min(bgWidth / 2, bgHeight / 2);
+        minFgHalf = Math.min(fgHalfWidth, fgHalfHeight);
+
+        // middle position in parent
+        middleX = centerX - fgHalfWidth;
+        middleY = centerY - fgHalfHeight;
+
+        // maximum left position
+        leftX = middleX - minBgHalf;
+        leftY = middleY;
+
+        // maximum right position
+        rightX = middleX + minBgHalf;
+        rightY = middleY;
+
+        // maximum up position
+        upX = middleX;
+        upY = middleY - minBgHalf;
+
+        // maximum down position
+        downX = middleX;
+        downY = middleY + minBgHalf;
+
+        knobX = middleX;
+        knobY = middleY;
+    }
+
+    /**
+     * Check if finger is inside the virtual circle around the background, where
+     * touches are detected.
+     *
+     * @param fingerX x coordinate
+     * @param fingerY y coordinate
+     * @return whether the point is inside the circle
+     */
+    public boolean isInside(float fingerX, float fingerY) {
+
+        // delta between center and finger points
+        float deltaX = fingerX - centerX;
+        float deltaY = fingerY - centerY;
+
+        // maximum allowed finger distance from the center
+        float maxDistance = keepInside ? minBgHalf : minBgHalf + minFgHalf;
+
+        return deltaX * deltaX + deltaY * deltaY < maxDistance * maxDistance;
+    }
+
+    /**
+     * Update the state depending on current finger coordinates, for samples
+     * without time, the filters of the input pipeline see them 1 ms apart.
+     *
+     * @param fingerX x coordinate
+     * @param fingerY y coordinate
+     * @return whether the direction is changed
+     */
+    public boolean move(float fingerX, float fingerY) {
+        return move(fingerX, fingerY, 0);
+    }
+
+    /**
+     * Update the state depending on current finger coordinates, computes the
+     * foreground position, angle, distance, direction and the analog output.
+     *
+     * @param fingerX x coordinate
+     * @param fingerY y coordinate
+     * @param time    sample time in ms, used by the filters of the input pipeline
+     * @return whether the direction is changed
+     */
+    public boolean move(float fingerX, float fingerY, long time) {
+
+        // delta and distance between center and finger points
+        deltaX = fingerX - centerX;
+        deltaY = fingerY - centerY;
+        distance = (float) Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+
+        // maximum foreground distance from center
+        float maxDistance = keepInside ? minBgHalf - minFgHalf : minBgHalf;
+
+        if (distance > maxDistance) {
+
+            //finger is outside the background area
+            pointOnLine(centerX, centerY, fingerX, fingerY, maxDistance);
+            knobX = lineX - fgHalfWidth;
+            knobY = lineY - fgHalfHeight;
+        } else {
+
+            //finger is inside the background area - move freely
+            knobX = fingerX - fgHalfWidth;
+            knobY = fingerY - fgHalfHeight;
+        }
+
+        // get rotational angle in degrees
+        angle = angleBetween(centerX, centerY, fingerX, fingerY);
+
+        // unit direction vector and sector, computed from the deltas without trigonometry
+        if (distance > 0) {
+            unitX = deltaX / distance;
+            unitY = deltaY / distance;
+            sector = sector(deltaX, deltaY);
+        }
+
+        // analog output, normalized to the background radius
+        pipeline.process(deltaX, deltaY, minBgHalf, time);
+        analogX = pipeline.getX();
+        analogY = pipeline.getY();
+        magnitude = pipeline.getMagnitude();
+
+        // the stages that only scale the magnitude keep the finger angle, so atan2 is
+        // needed only when a filter or an axial dead zone turns the analog output
+        if (magnitude > 0 && Math.abs(analogX * deltaY - analogY * deltaX) > ANGLE_EPSILON * distance) {
+            analogAngle = angleBetween(0, 0, analogX, analogY);
+        } else {
+            analogAngle = angle;
+        }
+
+        // set last and get the current direction
+        previousDirection = currentDirection;
+        float normalizedDistance = (minBgHalf > 0) ? distance / minBgHalf : 0;
+        previousDirectionSector = directionSector;
+        directionSector = quantizer.quantize(deltaX, deltaY, normalizedDistance, angle);
+        currentDirection = quantizer.getDirection();
+
+        // stick the foreground to the main four directions, for any number of ways
+        if (isSticky && distance > minBgHalf) {
+            stick();
+        }
+
+        return previousDirection != currentDirection;
+    }
+
+    /**
+     * Restore the foreground to the center, when the finger is released.
+     *
+     * @return whether the direction is changed
+     */
+    public boolean release() {
+
+        previousDirection = currentDirection;
+        currentDirection = DIRECTION_CENTER;
+        previousDirectionSector = directionSector;
+        directionSector = DirectionQuantizer.SECTOR_CENTER;
+        quantizer.reset();
+        unitX = 0;
+        unitY = 0;
+        pipeline.reset();
+        analogX = 0;
+        analogY = 0;
+        magnitude = 0;
+        analogAngle = angle;
+        knobX = middleX;
+        knobY = middleY;
+
+        return previousDirection != currentDirection;
+    }
+
+    /**
+     * Stick the foreground to one of the main four directions.
+     */
+    private void stick() {
+        switch (currentDirection) {
+
+            case DIRECTION_UP: {
+                knobX = upX;
+                knobY = keepInside ? upY + minFgHalf : upY;
+            }
+            break;
+            case DIRECTION_LEFT: {
+                knobY = leftY;
+                knobX = keepInside ? leftX + minFgHalf : leftX;
+            }
+            break;
+            case DIRECTION_DOWN: {
+                knobX = downX;
+                knobY = keepInside ? downY - minFgHalf : downY;
+            }
+            break;
+            case DIRECTION_RIGHT: {
+                knobY = rightY;
+                knobX = keepInside ? rightX - minFgHalf : rightX;
+            }
+            break;
+        }
+    }
+
+    /**
+     * Find the point lying on a line between two points -center and -finger
+     * and located from the center point to a -distance. The result is written
+     * to -lineX and -lineY, so no new object is created for each sample. The
+     * finger distance from the center computed by move() is used for the ratio.
+     *
+     * @param centerX  x coordinates
+     * @param centerY  y coordinates
+     * @param fingerX  x coordinates
+     * @param fingerY  y coordinates
+     * @param distance desired distance from the center
+     */
+    private void pointOnLine(float centerX, float centerY,
+                             float fingerX, float fingerY, float distance) {
+
+        float ratio = distance / this.distance;
+
+        // point coordinates distant from start point
+        lineX = (1 - ratio) * centerX + ratio * fingerX;
+        lineY = (1 - ratio) * centerY + ratio * fingerY;
+    }
+
+    /**
+     * Classify the delta between the center and the finger into one of the main
+     * four directions. If the finger is exactly on a diagonal the -previous
+     * direction is kept.
+     *
+     * @param deltaX   finger x distance from the center
+     * @param deltaY   finger y distance from the center
+     * @param previous previous direction
+     * @return the new direction
+     */
+    public static int direction(float deltaX, float deltaY, int previous) {
+
+        if (-deltaY > Math.abs(deltaX)) {
+            return DIRECTION_UP;
+        } else if (deltaY > Math.abs(deltaX)) {
+            return DIRECTION_DOWN;
+        } else if (-deltaX > Math.abs(deltaY)) {
+            return DIRECTION_LEFT;
+        } else if (deltaX > Math.abs(deltaY)) {
+            return DIRECTION_RIGHT;
+        }
+        return previous;
+    }
+
+    /**
+     * Classify the delta between the center and the finger into one of the
+     * 8 sectors, using lookup table with the delta quantised by its signs and
+     * its slope relative to the sector boundaries.
+     *
+     * @param deltaX finger x distance from the center
+     * @param deltaY finger y distance from the center (down is positive)
+     * @return the sector in range [0, 7], 0 is right and the next follow counterclockwise
+     */
+    public static int sector(float deltaX, float deltaY) {
+
+        float absX = Math.abs(deltaX);
+        float absY = Math.abs(deltaY);
+        int index = (deltaX < 0 ? 8 : 0) | (deltaY > 0 ? 4 : 0) |
+                (absY >= absX * TAN_67_5 ? 2 : 0) | (absY >= absX * TAN_22_5 ? 1 : 0);
+        return SECTORS[index];
+    }
+
+    /**
+     * Get angle between two point -center and -finger position, in degrees
+     * in range [0, 360) counterclockwise, starting from the positive x axis.
+     *
+     * @param centerX
+     * @param centerY
+     * @param fingerX
+     * @param fingerY
+     * @return
+     */
+    public static float angleBetween(float centerX, float centerY, float fingerX, float fingerY) {
+
+        float angleDegree = (float) Math.toDegrees(Math.atan2(-(fingerY - centerY), fingerX - centerX));
+        return (angleDegree < 0) ? angleDegree + 360 : angleDegree;
+    }
+
+    public boolean isSticky() {
+        return isSticky;
+    }
+
+    public void setSticky(boolean isSticky) {
+        this.isSticky = isSticky;
+    }
+
+    public boolean isKeepInside() {
+        return keepInside;
+    }
+
+    public void setKeepInside(boolean keepInside) {
+        this.keepInside = keepInside;
+    }
+
+    /**
+     * Set the quantizer that classifies the samples into directions, the
+     * default one has 4 ways with no hysteresis and no dead zone. For any
+     * number of ways the direction is one of the DIRECTION_* constants, and
+     * sticky foreground sticks to those main four directions.
+     *
+     * @param quantizer the quantizer
+     */
+    public void setQuantizer(DirectionQuantizer quantizer) {
+        this.quantizer = quantizer;
+        directionSector = quantizer.getSector();
+        previousDirectionSector = directionSector;
+        currentDirection = quantizer.getDirection();
+    }
+
+    public DirectionQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Set the input pipeline that turns the deltas into analog output, the
+     * default one has no stages and gives the deltas normalized to the
+     * background radius and clamped to the unit circle.
+     *
+     * @param pipeline the pipeline
+     */
+    public void setInputPipeline(InputPipeline pipeline) {
+        this.pipeline = pipeline;
+        pipeline.reset();
+    }
+
+    public InputPipeline getInputPipeline() {
+        return pipeline;
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    public float getMinBgHalf() {
+        return minBgHalf;
+    }
+
+    public float getMinFgHalf() {
+        return minFgHalf;
+    }
+
+    public float getMiddleX() {
+        return middleX;
+    }
+
+    public float getMiddleY() {
+        return middleY;
+    }
+
+    public float getDeltaX() {
+        return deltaX;
+    }
+
+    public float getDeltaY() {
+        return deltaY;
+    }
+
+    public float getAngle() {
+        return angle;
+    }
+
+    public float getDistance() {
+        return distance;
+    }
+
+    public float getKnobX() {
+        return knobX;
+    }
+
+    public float getKnobY() {
+        return knobY;
+    }
+
+    public float getLineX() {
+        return lineX;
+    }
+
+    public float getLineY() {
+        return lineY;
+    }
+
+    public int getSector() {
+        return sector;
+    }
+
+    public float getUnitX() {
+        return unitX;
+    }
+
+    public float getUnitY() {
+        return unitY;
+    }
+
+    public float getAnalogX() {
+        return analogX;
+    }
+
+    public float getAnalogY() {
+        return analogY;
+    }
+
+    public float getMagnitude() {
+        return magnitude;
+    }
+
+    /**
+     * Get the angle of the analog output, the polar form of (analogX, analogY)
+     * together with the magnitude. It is different from the finger angle when
+     * the input pipeline has filters or an axial dead zone.
+     *
+     * @return the angle (degrees), the finger angle when the magnitude is 0
+     */
+    public float getAnalogAngle() {
+        return analogAngle;
+    }
+
+    public int getDirection() {
+        return currentDirection;
+    }
+
+    public int getPreviousDirection() {
+        return previousDirection;
+    }
+
+    /**
+     * Get the sector of the direction quantizer, in range [0, ways) where 0 is
+     * right and the next follow counterclockwise, or DirectionQuantizer.SECTOR_CENTER.
+     * Unlike getSector() it has the configured number of ways, hysteresis and dead
+     * zone, and it is the center when released.
+     *
+     * @return the sector
+     */
+    public int getDirectionSector() {
+        return directionSector;
+    }
+
+    /**
+     * Get whether the sector of the direction quantizer is changed by the last
+     * call to move() or release()
+     *
+     * @return whether the sector is changed
+     */
+    public boolean isDirectionSectorChanged() {
+        return directionSector != previousDirectionSector;
+    }
+}
@@ -0,0 +1,183 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * KnobPredictor Class (Java)
+ * Predicts where the finger will be at the next frame deadline, so consumers
+ * that draw from the controller state do not lag one or two frames behind the
+ * finger. The velocity is estimated with least squares linear regression over
+ * the recent samples, which averages out the digitizer noise instead of
+ * amplifying it as a difference of the last two samples would, and the last
+ * sample is extrapolated by the prediction horizon. The samples are kept in
+ * primitive ring arrays, so no objects are created for each sample.
+ */
+public class KnobPredictor {
+
+    public static final int DEFAULT_WINDOW = 6;         // number of samples used for the velocity
+    public static final float DEFAULT_HORIZON = 16;     // prediction time in ms, about one frame at 60 Hz
+    public static final float DEFAULT_MAX_AGE = 60;     // samples older than this, relative to the last one are ignored (ms)
+
+    private final long[] times;                     // sample times in ms
+    private final float[] deltaX;                   // finger x distances from the center
+    private final float[] deltaY;                   // finger y distances from the center
+    private int start;                              // position of the oldest sample
+    private int count;                              // number of samples
+    private float horizon;                          // prediction time in ms
+    private float maxAge;                           // maximum sample age in ms
+
+    private float velocityX;                        // estimated x velocity in px/ms
+    private float velocityY;                        // estimated y velocity in px/ms
+    private float predictedDeltaX;                  // predicted finger x distance from the center
+    private float predictedDeltaY;                  // predicted finger y distance from the center
+    private float predictedAngle;                   // predicted angle in degrees
+    private float predictedDistance;                // predicted finger distance from the center
+
+    public KnobPredictor() {
+        this(DEFAULT_WINDOW, DEFAULT_HORIZON);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param window  number of recent samples used for the velocity, at least 2
+     * @param horizon prediction time in ms, the time between the sample and the next frame deadline
+     */
+    public KnobPredictor(int window, float horizon) {
+
+        if (window < 2) {
+            throw new IllegalArgumentException("Window must have at least 2 samples, but was " + window);
+        }
+        times = new long[window];
+        deltaX = new float[window];
+        deltaY = new float[window];
+        this.horizon = horizon;
+        maxAge = DEFAULT_MAX_AGE;
+    }
+
+    /**
+     * Add sample and update the prediction
+     *
+     * @param time   sample time in ms
+     * @param deltaX finger x distance from the center
+     * @param deltaY finger y distance from the center
+     */
+    public void add(long time, float deltaX, float deltaY) {
+
+        int position;
+        if (count < times.length) {
+            position = (start + count) % times.length;
+            count++;
+        } else {
+            position = start;
+            start = (start + 1) % times.length;
+        }
+        times[position] = time;
+        this.deltaX[position] = deltaX;
+        this.deltaY[position] = deltaY;
+
+        updateVelocity(time);
+        predictedDeltaX = deltaX + velocityX * horizon;
+        predictedDeltaY = deltaY + velocityY * horizon;
+        predictedDistance = (float) Math.sqrt(predictedDeltaX * predictedDeltaX + predictedDeltaY * predictedDeltaY);
+        predictedAngle = JoystickEngine.angleBetween(0, 0, predictedDeltaX, predictedDeltaY);
+    }
+
+    /**
+     * Estimate the velocity as the slope of the least squares line through
+     * the recent samples, for the x and y distances separately
+     *
+     * @param lastTime time of the last sample
+     */
+    private void updateVelocity(long lastTime) {
+
+        // sums in a single pass, times are relative to the last sample so they stay small
+        int used = 0;
+        float sumTime = 0;
+        float sumTimeSquared = 0;
+        float sumX = 0;
+        float sumY = 0;
+        float sumTimeX = 0;
+        float sumTimeY = 0;
+        int position = start;
+        for (int i = 0; i < count; i++) {
+            float time = times[position] - lastTime;
+            if (-time <= maxAge) {
+                float x = deltaX[position];
+                float y = deltaY[position];
+                sumTime += time;
+                sumTimeSquared += time * time;
+                sumX += x;
+                sumY += y;
+                sumTimeX += time * x;
+                sumTimeY += time * y;
+                used++;
+            }
+            if (++position == times.length) {
+                position = 0;
+            }
+        }
+
+        // the variance is 0 when all samples have the same time
+        float variance = used * sumTimeSquared - sumTime * sumTime;
+        if (used < 2 || variance <= 0) {
+            velocityX = 0;
+            velocityY = 0;
+            return;
+        }
+        velocityX = (used * sumTimeX - sumTime * sumX) / variance;
+        velocityY = (used * sumTimeY - sumTime * sumY) / variance;
+    }
+
+    /**
+     * Remove all samples, when the finger is released
+     */
+    public void reset() {
+        start = 0;
+        count = 0;
+        velocityX = 0;
+        velocityY = 0;
+    }
+
+    public void setHorizon(float horizon) {
+        this.horizon = horizon;
+    }
+
+    public float getHorizon() {
+        return horizon;
+    }
+
+    public void setMaxAge(float maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public float getMaxAge() {
+        return maxAge;
+    }
+
+    public int getWindow() {
+        return times.length;
+    }
+
+    public float getVelocityX() {
+        return velocityX;
+    }
+
+    public float getVelocityY() {
+        return velocityY;
+    }
+
+    public float getPredictedDeltaX() {
+        return predictedDeltaX;
+    }
+
+    public float getPredictedDeltaY() {
+        return predictedDeltaY;
+    }
+
+    public float getPredictedAngle() {
+        return predictedAngle;
+    }
+
+    public float getPredictedDistance() {
+        return predictedDistance;
+    }
+}
@@ -0,0 +1,145 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * LatencyHistogram Class (Java)
+ * Fixed size histogram for latency values, with buckets that grow exponentially
+ * in the same way as in HdrHistogram. Each power of two range is split into 16
+ * linear sub buckets, so any recorded value is reported with error below 1/16
+ * (6.25%), while the whole range up to about 18 minutes in microseconds fits in
+ * a single primitive array. Recording a value is a few integer operations and
+ * never allocates. It is not thread safe, values should be recorded from a
+ * single thread, and reading from other threads may see slightly stale counts.
+ */
+public class LatencyHistogram {
+
+    // number of bits for the linear sub buckets in each power of two range
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // values above the maximum are recorded as the maximum
+    public static final long MAX_VALUE = (1L << 30) - 1;
+
+    private final long[] counts;                    // number of values in each bucket
+    private long totalCount;                        // number of recorded values
+    private long totalValue;                        // sum of all recorded values
+    private long minValue;                          // exact minimum value
+    private long maxValue;                          // exact maximum value
+
+    public LatencyHistogram() {
+        counts = new long[indexOf(MAX_VALUE) + 1];
+        reset();
+    }
+
+    /**
+     * Get the bucket index for a value, values below (2 * SUB_BUCKET_COUNT) have
+     * a bucket for each value, and for bigger values the bucket is found from
+     * the position of the highest bit and the next SUB_BUCKET_BITS bits.
+     *
+     * @param value non negative value
+     * @return the bucket index
+     */
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >> shift);
+    }
+
+    /**
+     * Get the lowest value that is recorded in a bucket
+     *
+     * @param index the bucket index
+     * @return the lowest value
+     */
+    static long lowestValueAt(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        return (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+    }
+
+    /**
+     * Record value
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value < minValue) {
+            minValue = value;
+        }
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Get value at a given percentile, it is the highest value that falls
+     * into the same bucket as the value at the percentile
+     *
+     * @param percentile percentile in range [0, 100]
+     * @return the value, or 0 if no values are recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= countAtPercentile) {
+                long highestValue = (i + 1 < counts.length) ? lowestValueAt(i + 1) - 1 : MAX_VALUE;
+                return Math.min(highestValue, maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public long getMedian() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getMax() {
+        return (totalCount == 0) ? 0 : maxValue;
+    }
+
+    public long getMin() {
+        return (totalCount == 0) ? 0 : minValue;
+    }
+
+    public double getMean() {
+        return (totalCount == 0) ? 0 : (double) totalValue / totalCount;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+}
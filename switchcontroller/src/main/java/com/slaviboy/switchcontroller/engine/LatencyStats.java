@@ -0,0 +1,123 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * LatencyStats Class (Java)
+ * Latency of the touch pipeline of a single controller, measured from the time
+ * of the touch event, to the time it is received, to the time the listener is
+ * called and to the time of the next drawn frame. Each stage is kept in its own
+ * histogram in microseconds, and the number of events per second is counted
+ * over windows of one second. Times are in nanoseconds from the same monotonic
+ * clock as the event times (System.nanoTime() on Android).
+ */
+public class LatencyStats {
+
+    private static final long WINDOW_NANOS = 1000000000L;
+
+    private final LatencyHistogram touch;           // event time to receiving the event
+    private final LatencyHistogram dispatch;        // event time to calling the listener
+    private final LatencyHistogram frame;           // event time to the next drawn frame
+
+    private long windowStart;                       // start time of the current events per second window
+    private int windowEvents;                       // number of events in the current window
+    private volatile float eventsPerSecond;         // events per second in the last complete window
+
+    public LatencyStats() {
+        touch = new LatencyHistogram();
+        dispatch = new LatencyHistogram();
+        frame = new LatencyHistogram();
+        windowStart = -1;
+    }
+
+    /**
+     * Record received event, and count it for the events per second
+     *
+     * @param eventTime event time in ns
+     * @param now       current time in ns
+     */
+    public void recordTouch(long eventTime, long now) {
+
+        touch.record((now - eventTime) / 1000);
+
+        if (windowStart < 0) {
+            windowStart = now;
+        } else if (now - windowStart >= WINDOW_NANOS) {
+            eventsPerSecond = (float) windowEvents * WINDOW_NANOS / (now - windowStart);
+            windowStart = now;
+            windowEvents = 0;
+        }
+        windowEvents++;
+    }
+
+    /**
+     * Record calling the listener for an event
+     *
+     * @param eventTime event time in ns
+     * @param now       current time in ns
+     */
+    public void recordDispatch(long eventTime, long now) {
+        dispatch.record((now - eventTime) / 1000);
+    }
+
+    /**
+     * Record drawing the first frame after an event
+     *
+     * @param eventTime event time in ns
+     * @param now       current time in ns
+     */
+    public void recordFrame(long eventTime, long now) {
+        frame.record((now - eventTime) / 1000);
+    }
+
+    /**
+     * Get histogram with the time from the event to receiving it, in microseconds
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getTouchLatency() {
+        return touch;
+    }
+
+    /**
+     * Get histogram with the time from the event to calling the listener, in microseconds
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getDispatchLatency() {
+        return dispatch;
+    }
+
+    /**
+     * Get histogram with the time from the event to the next drawn frame, in microseconds
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getFrameLatency() {
+        return frame;
+    }
+
+    /**
+     * Get the number of events per second, in the last complete window of one second
+     *
+     * @return events per second
+     */
+    public float getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public void reset() {
+        touch.reset();
+        dispatch.reset();
+        frame.reset();
+        windowStart = -1;
+        windowEvents = 0;
+        eventsPerSecond = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "touch p50/p99/max " + touch.getMedian() + "/" + touch.getP99() + "/" + touch.getMax() + " us, " +
+                "dispatch p50/p99/max " + dispatch.getMedian() + "/" + dispatch.getP99() + "/" + dispatch.getMax() + " us, " +
+                "frame p50/p99/max " + frame.getMedian() + "/" + frame.getP99() + "/" + frame.getMax() + " us, " +
+                eventsPerSecond + " events/s";
+    }
+}
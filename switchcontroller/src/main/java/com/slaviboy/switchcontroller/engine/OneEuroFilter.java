@@ -0,0 +1,109 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * OneEuroFilter Class (Java)
+ * Input pipeline stage that smooths the axes with the one euro filter (Casiez et al.),
+ * a low pass filter where the cutoff frequency grows with the speed. Slow
+ * movements are smoothed strongly, which removes the jitter of a resting finger,
+ * and fast movements are smoothed less, so they do not lag. The sample times
+ * are used for the filter coefficients, so it works with any event rate.
+ */
+public class OneEuroFilter implements InputPipeline.Stage {
+
+    public static final float DEFAULT_MIN_CUTOFF = 1;           // cutoff frequency at rest in Hz
+    public static final float DEFAULT_BETA = 0.5f;              // how fast the cutoff grows with the speed
+    public static final float DEFAULT_DERIVATIVE_CUTOFF = 1;    // cutoff frequency for the speed in Hz
+
+    private final float minCutoff;                  // cutoff frequency at rest in Hz
+    private final float beta;                       // cutoff increase per unit of speed (axis units per second)
+    private final float derivativeCutoff;           // cutoff frequency for the speed in Hz
+
+    private boolean hasValue;                       // whether a sample was received since the last reset
+    private long lastTime;                          // time of the last sample in ms
+    private float x;                                // filtered x axis
+    private float y;                                // filtered y axis
+    private float speedX;                           // filtered x speed in axis units per second
+    private float speedY;                           // filtered y speed in axis units per second
+
+    public OneEuroFilter() {
+        this(DEFAULT_MIN_CUTOFF, DEFAULT_BETA, DEFAULT_DERIVATIVE_CUTOFF);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param minCutoff        cutoff frequency at rest in Hz, lower values remove more jitter
+     * @param beta             cutoff increase per unit of speed, higher values give less lag
+     * @param derivativeCutoff cutoff frequency for the speed in Hz
+     */
+    public OneEuroFilter(float minCutoff, float beta, float derivativeCutoff) {
+        if (minCutoff <= 0 || derivativeCutoff <= 0 || beta < 0) {
+            throw new IllegalArgumentException("Cutoff frequencies must be positive and beta non negative");
+        }
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+    }
+
+    /**
+     * Get the smoothing factor of a low pass filter
+     *
+     * @param cutoff  cutoff frequency in Hz
+     * @param seconds time since the last sample
+     * @return the smoothing factor in range (0, 1)
+     */
+    private static float alpha(float cutoff, float seconds) {
+        float tau = 1 / (2 * (float) Math.PI * cutoff);
+        return 1 / (1 + tau / seconds);
+    }
+
+    @Override
+    public void apply(InputPipeline pipeline, long time) {
+
+        float inputX = pipeline.getX();
+        float inputY = pipeline.getY();
+
+        // the first sample after reset is not smoothed, so the output does not start from the center
+        if (!hasValue) {
+            x = inputX;
+            y = inputY;
+            speedX = 0;
+            speedY = 0;
+            lastTime = time;
+            hasValue = true;
+            return;
+        }
+
+        // samples with the same time, are handled as if they are 1 ms apart
+        float seconds = Math.max(1, time - lastTime) / 1000f;
+        lastTime = time;
+
+        // smoothed speed, and cutoff frequency that grows with it
+        float derivativeAlpha = alpha(derivativeCutoff, seconds);
+        speedX += derivativeAlpha * ((inputX - x) / seconds - speedX);
+        speedY += derivativeAlpha * ((inputY - y) / seconds - speedY);
+        float speed = (float) Math.sqrt(speedX * speedX + speedY * speedY);
+        float alpha = alpha(minCutoff + beta * speed, seconds);
+
+        x += alpha * (inputX - x);
+        y += alpha * (inputY - y);
+        pipeline.set(x, y);
+    }
+
+    @Override
+    public void reset() {
+        hasValue = false;
+    }
+
+    public float getMinCutoff() {
+        return minCutoff;
+    }
+
+    public float getBeta() {
+        return beta;
+    }
+
+    public float getDerivativeCutoff() {
+        return derivativeCutoff;
+    }
+}
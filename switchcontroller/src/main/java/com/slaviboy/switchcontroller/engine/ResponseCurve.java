@@ -0,0 +1,112 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * ResponseCurve Class (Java)
+ * Input pipeline stage that maps the magnitude through a curve, keeping the
+ * direction. The curve is sampled once into a lookup table, and each sample
+ * is mapped with linear interpolation between two table values, so custom
+ * curves cost the same as the built in ones.
+ */
+public class ResponseCurve implements InputPipeline.Stage {
+
+    public static final int DEFAULT_SIZE = 256;     // number of table intervals
+
+    private final float[] table;                    // curve values for magnitudes i / (table.length - 1)
+    private final int last;                         // index of the last table value
+
+    /**
+     * Curve function, called only when the table is created
+     */
+    public interface Function {
+
+        /**
+         * @param magnitude input magnitude in range [0, 1]
+         * @return output magnitude in range [0, 1]
+         */
+        float map(float magnitude);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param function the curve
+     * @param size     number of table intervals, more give better precision
+     */
+    public ResponseCurve(Function function, int size) {
+
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be positive, but was " + size);
+        }
+        table = new float[size + 1];
+        last = size;
+        for (int i = 0; i <= size; i++) {
+            table[i] = Math.max(0, Math.min(1, function.map((float) i / size)));
+        }
+    }
+
+    public ResponseCurve(Function function) {
+        this(function, DEFAULT_SIZE);
+    }
+
+    /**
+     * Curve where the output is the same as the input
+     *
+     * @return the curve
+     */
+    public static ResponseCurve linear() {
+        return new ResponseCurve(new Function() {
+            @Override
+            public float map(float magnitude) {
+                return magnitude;
+            }
+        }, 1);
+    }
+
+    /**
+     * Power curve, exponents above 1 give finer control near the center,
+     * and exponents below 1 give faster response near the center
+     *
+     * @param exponent the exponent, 2 is the usual quadratic curve
+     * @return the curve
+     */
+    public static ResponseCurve exponential(final float exponent) {
+        if (exponent <= 0) {
+            throw new IllegalArgumentException("Exponent must be positive, but was " + exponent);
+        }
+        return new ResponseCurve(new Function() {
+            @Override
+            public float map(float magnitude) {
+                return (float) Math.pow(magnitude, exponent);
+            }
+        });
+    }
+
+    /**
+     * Map magnitude through the table
+     *
+     * @param magnitude magnitude in range [0, 1]
+     * @return mapped magnitude
+     */
+    public float map(float magnitude) {
+
+        if (magnitude <= 0) {
+            return table[0];
+        }
+        if (magnitude >= 1) {
+            return table[last];
+        }
+        float position = magnitude * last;
+        int index = (int) position;
+        float fraction = position - index;
+        return table[index] + (table[index + 1] - table[index]) * fraction;
+    }
+
+    @Override
+    public void apply(InputPipeline pipeline, long time) {
+        pipeline.setMagnitude(map(pipeline.getMagnitude()));
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,254 @@
+package com.slaviboy.switchcontroller.engine;
+
+/**
+ * TraceReplayer Class (Java)
+ * Headless replay of recorded input traces, through the same engine logic that
+ * SwitchController uses. The first pointer that goes down inside the controller
+ * is captured, its samples move the knob, and it is released when it goes up or
+ * the gesture is canceled, while all other pointers are ignored. The historical
+ * samples of move events are used depending on the history mode, the same way
+ * as SwitchController uses them, so the output matches the live one. The listener
+ * receives the same calls as SwitchController.ControllerListener, that can be
+ * attached using SwitchController.ReplayListener. Each record
+ * is handled as a separate sample and there is no waiting between the samples,
+ * so traces are replayed at maximum speed and with deterministic output.
+ */
+public class TraceReplayer {
+
+    // history modes, for the samples batched in each move event
+    public static final int HISTORY_NONE = 0;          // only the latest sample is used
+    public static final int HISTORY_TRANSITIONS = 1;   // all samples are used, and each direction change is reported
+    public static final int HISTORY_COALESCED = 2;     // all samples are used, and one direction change is reported per event
+
+    private final JoystickEngine engine;            // engine with the math, configured with the controller size
+    private boolean detectTransparency;             // detect events when finger is on the transparent area outside the background
+    private int[] actions;                          // attached actions, passed to the listener
+    private int id;                                 // controller id, passed to the listener
+    private ControllerState state;                  // optional state, published for each used sample
+    private int historyMode;                        // how the historical samples in move events are used
+
+    private boolean isActive;                       // whether a pointer is captured
+    private int pointerId;                          // id of the captured pointer
+    private boolean isInEvent;                      // whether historical samples of the current move event were used
+    private int eventStartDirection;                // direction before the current move event
+
+    /**
+     * Listener with the same calls as SwitchController.ControllerListener, for
+     * code that runs without the android views, like tests and benchmarks
+     */
+    public interface Listener {
+
+        void onDirectionChange(int id, int direction, int action);
+
+        void onMove(int id, double angle, double distance);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param engine engine with the size and options of the recorded controller
+     */
+    public TraceReplayer(JoystickEngine engine) {
+        this.engine = engine;
+        pointerId = -1;
+    }
+
+    public void setDetectTransparency(boolean detectTransparency) {
+        this.detectTransparency = detectTransparency;
+    }
+
+    public void setActions(int[] actions) {
+        this.actions = actions;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public void setState(ControllerState state) {
+        this.state = state;
+    }
+
+    /**
+     * Set how the historical samples, batched in each move event are used,
+     * must match the history mode of the recorded controller
+     *
+     * @param historyMode one of HISTORY_NONE, HISTORY_TRANSITIONS or HISTORY_COALESCED
+     */
+    public void setHistoryMode(int historyMode) {
+        this.historyMode = historyMode;
+    }
+
+    public int getHistoryMode() {
+        return historyMode;
+    }
+
+    public JoystickEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Replay all records of a trace, from the oldest to the newest
+     *
+     * @param trace    the trace
+     * @param listener listener that receives the output, can be null
+     * @return number of records that were used by the controller
+     */
+    public int replay(InputTrace trace, Listener listener) {
+
+        int used = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (replay(trace.getTime(i), trace.getAction(i), trace.getPointerId(i),
+                    trace.getX(i), trace.getY(i), trace.isHistorical(i), listener)) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Replay single record, that is the current sample of its event
+     *
+     * @param time      event time in ms
+     * @param action    masked action, one of the InputTrace.ACTION_* constants
+     * @param pointerId pointer id
+     * @param x         x coordinate relative to the controller
+     * @param y         y coordinate relative to the controller
+     * @param listener  listener that receives the output, can be null
+     * @return whether the record was used by the controller
+     */
+    public boolean replay(long time, int action, int pointerId, float x, float y, Listener listener) {
+        return replay(time, action, pointerId, x, y, false, listener);
+    }
+
+    /**
+     * Replay single record
+     *
+     * @param time         event time in ms
+     * @param action       masked action, one of the InputTrace.ACTION_* constants
+     * @param pointerId    pointer id
+     * @param x            x coordinate relative to the controller
+     * @param y            y coordinate relative to the controller
+     * @param isHistorical whether it is a historical sample of a move event
+     * @param listener     listener that receives the output, can be null
+     * @return whether the record was used by the controller
+     */
+    public boolean replay(long time, int action, int pointerId, float x, float y, boolean isHistorical,
+                          Listener listener) {
+
+        switch (action) {
+
+            case InputTrace.ACTION_DOWN:
+            case InputTrace.ACTION_POINTER_DOWN: {
+                if (isActive || !(detectTransparency || engine.isInside(x, y))) {
+                    return false;
+                }
+                isActive = true;
+                this.pointerId = pointerId;
+                move(x, y, time, listener);
+                return true;
+            }
+            case InputTrace.ACTION_MOVE: {
+                if (!isActive || pointerId != this.pointerId) {
+                    return false;
+                }
+                if (historyMode == HISTORY_NONE) {
+                    if (isHistorical) {
+                        return false;
+                    }
+                    move(x, y, time, listener);
+                } else {
+                    moveWithHistory(x, y, time, isHistorical, listener);
+                }
+                return true;
+            }
+            case InputTrace.ACTION_UP:
+            case InputTrace.ACTION_POINTER_UP:
+            case InputTrace.ACTION_CANCEL: {
+                if (!isActive || (action != InputTrace.ACTION_CANCEL && pointerId != this.pointerId)) {
+                    return false;
+                }
+                release(time, listener);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void move(float x, float y, long time, Listener listener) {
+
+        boolean isDirectionChanged = engine.move(x, y, time);
+        if (listener != null) {
+            if (isDirectionChanged) {
+                dispatchDirectionChange(listener);
+            }
+            listener.onMove(id, engine.getAngle(), engine.getDistance());
+        }
+        if (state != null) {
+            state.publish(engine, true, time);
+        }
+    }
+
+    /**
+     * Move using a sample of a move event the same way as SwitchController
+     * does with the history, the listener is called for each direction change
+     * or once for the whole event, and onMove() only for the current sample
+     */
+    private void moveWithHistory(float x, float y, long time, boolean isHistorical, Listener listener) {
+
+        if (!isInEvent) {
+            eventStartDirection = engine.getDirection();
+        }
+        isInEvent = isHistorical;
+
+        boolean isDirectionChanged = engine.move(x, y, time);
+        if (listener != null) {
+            if (isDirectionChanged && historyMode == HISTORY_TRANSITIONS) {
+                dispatchDirectionChange(listener);
+            }
+            if (!isHistorical) {
+                if (historyMode == HISTORY_COALESCED && engine.getDirection() != eventStartDirection) {
+                    dispatchDirectionChange(listener);
+                }
+                listener.onMove(id, engine.getAngle(), engine.getDistance());
+            }
+        }
+        if (state != null && !isHistorical) {
+            state.publish(engine, true, time);
+        }
+    }
+
+    private void release(long time, Listener listener) {
+
+        engine.release();
+        isActive = false;
+        isInEvent = false;
+        pointerId = -1;
+        if (listener != null) {
+            dispatchDirectionChange(listener);
+            listener.onMove(id, engine.getAngle(), engine.getDistance());
+        }
+        if (state != null) {
+            state.publish(engine, false, time);
+        }
+    }
+
+    private void dispatchDirectionChange(Listener listener) {
+        int currentDirection = engine.getDirection();
+        int currentAction = (actions != null) ? actions[currentDirection] : -1;
+        listener.onDirectionChange(id, currentDirection, currentAction);
+    }
+
+    /**
+     * Release the captured pointer without calling the listener, so the
+     * replayer can be used for another trace
+     */
+    public void reset() {
+        if (isActive) {
+            engine.release();
+        }
+        isActive = false;
+        isInEvent = false;
+        pointerId = -1;
+    }
+}
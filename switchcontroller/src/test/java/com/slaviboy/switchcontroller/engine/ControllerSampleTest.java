@@ -0,0 +1,48 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the reusable sample batch.
+ */
+public class ControllerSampleTest {
+
+    @Test
+    public void add_storesSamplesInOrder() {
+        ControllerSample sample = new ControllerSample(4);
+        sample.add(10, 90, 5, JoystickEngine.DIRECTION_UP);
+        sample.add(20, 180, 6, JoystickEngine.DIRECTION_LEFT);
+
+        assertEquals(2, sample.getCount());
+        assertEquals(10, sample.times[0]);
+        assertEquals(180, sample.angles[1], 0);
+        assertEquals(6, sample.distances[1], 0);
+        assertEquals(JoystickEngine.DIRECTION_LEFT, sample.directions[1]);
+    }
+
+    @Test
+    public void add_whenFull_overwritesLastSample() {
+        ControllerSample sample = new ControllerSample(2);
+        sample.add(10, 0, 0, JoystickEngine.DIRECTION_RIGHT);
+        sample.add(20, 0, 0, JoystickEngine.DIRECTION_RIGHT);
+        sample.add(30, 90, 0, JoystickEngine.DIRECTION_UP);
+
+        assertEquals(2, sample.getCount());
+        assertEquals(1, sample.getDropped());
+        assertEquals(30, sample.times[1]);
+        assertEquals(JoystickEngine.DIRECTION_UP, sample.directions[1]);
+    }
+
+    @Test
+    public void clear_keepsArrays() {
+        ControllerSample sample = new ControllerSample(2);
+        long[] times = sample.times;
+        sample.add(10, 0, 0, JoystickEngine.DIRECTION_RIGHT);
+        sample.clear();
+
+        assertTrue(sample.isEmpty());
+        assertSame(times, sample.times);
+    }
+}
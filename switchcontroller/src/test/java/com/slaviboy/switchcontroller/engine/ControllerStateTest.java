@@ -0,0 +1,120 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the lock free controller state.
+ */
+public class ControllerStateTest {
+
+    @Test
+    public void read_copiesPublishedValues() {
+        ControllerState state = new ControllerState();
+        ControllerState.Snapshot snapshot = new ControllerState.Snapshot();
+        state.publish(true, JoystickEngine.DIRECTION_UP, 2, 0, -1, 90, 10, 95, 12, 0, -0.5f, 0.5f, 1, 2, 100);
+
+        int version = state.read(snapshot);
+        assertEquals(2, version);
+        assertTrue(snapshot.isActive);
+        assertEquals(JoystickEngine.DIRECTION_UP, snapshot.direction);
+        assertEquals(2, snapshot.sector);
+        assertEquals(0, snapshot.unitX, 0);
+        assertEquals(-1, snapshot.unitY, 0);
+        assertEquals(90, snapshot.angle, 0);
+        assertEquals(10, snapshot.distance, 0);
+        assertEquals(95, snapshot.predictedAngle, 0);
+        assertEquals(12, snapshot.predictedDistance, 0);
+        assertEquals(0, snapshot.analogX, 0);
+        assertEquals(-0.5f, snapshot.analogY, 0);
+        assertEquals(0.5f, snapshot.magnitude, 0);
+        assertEquals(1, snapshot.knobX, 0);
+        assertEquals(2, snapshot.knobY, 0);
+        assertEquals(100, snapshot.time);
+    }
+
+    @Test
+    public void publish_copiesTheEngineState() {
+        JoystickEngine engine = new JoystickEngine();
+        engine.setSize(100, 100, 50, 50, 150, 150);
+        engine.move(75 + 15, 75 + 20, 16);
+
+        ControllerState state = new ControllerState();
+        ControllerState.Snapshot snapshot = new ControllerState.Snapshot();
+        state.publish(engine, true, 16);
+        state.read(snapshot);
+        assertEquals(engine.getDirection(), snapshot.direction);
+        assertEquals(engine.getSector(), snapshot.sector);
+        assertEquals(0.6f, snapshot.unitX, 1e-6f);
+        assertEquals(0.8f, snapshot.unitY, 1e-6f);
+        assertEquals(engine.getAngle(), snapshot.predictedAngle, 0);
+        assertEquals(0.3f, snapshot.analogX, 1e-6f);
+        assertEquals(0.4f, snapshot.analogY, 1e-6f);
+        assertEquals(0.5f, snapshot.magnitude, 1e-6f);
+
+        // after release the actual values are published, not the predicted ones
+        KnobPredictor predictor = new KnobPredictor();
+        predictor.add(0, 0, 0);
+        predictor.add(16, 15, 20);
+        engine.release();
+        state.publish(engine, predictor, false, 32);
+        state.read(snapshot);
+        assertFalse(snapshot.isActive);
+        assertEquals(engine.getDistance(), snapshot.predictedDistance, 0);
+        assertEquals(0, snapshot.magnitude, 0);
+    }
+
+    @Test
+    public void read_neverSeesTornState() throws InterruptedException {
+        final ControllerState state = new ControllerState();
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        final AtomicInteger torn = new AtomicInteger();
+
+        // all values of a single publish are derived from the same counter
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; isRunning.get(); i = (i + 1) % 100000) {
+                    state.publish(true, i, i, i, i, i, i * 2, i, i * 2, i, i, i, i * 3, i * 4, i);
+                }
+            }
+        });
+
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ControllerState.Snapshot snapshot = new ControllerState.Snapshot();
+                    for (int i = 0; i < 200000; i++) {
+                        state.read(snapshot);
+                        float value = snapshot.direction;
+                        if (snapshot.sector != snapshot.direction || snapshot.unitY != value ||
+                                snapshot.angle != value || snapshot.distance != value * 2 ||
+                                snapshot.predictedDistance != value * 2 || snapshot.magnitude != value ||
+                                snapshot.knobX != value * 3 || snapshot.knobY != value * 4 ||
+                                snapshot.time != snapshot.direction) {
+                            torn.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        isRunning.set(false);
+        writer.join();
+
+        assertEquals(0, torn.get());
+    }
+}
@@ -0,0 +1,130 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the direction quantizer, that runs on a plain JVM.
+ */
+public class DirectionQuantizerTest {
+
+    /**
+     * Quantize a sample at the given angle and distance from the center
+     *
+     * @return the sector
+     */
+    private static int quantize(DirectionQuantizer quantizer, float angle, float distance) {
+        double angleRad = Math.toRadians(angle);
+        float deltaX = (float) (100 * distance * Math.cos(angleRad));
+        float deltaY = (float) (-100 * distance * Math.sin(angleRad));
+        return quantizer.quantize(deltaX, deltaY, distance, angle);
+    }
+
+    /**
+     * Quantize a sample at the given angle and distance from the center
+     *
+     * @return the main direction
+     */
+    private static int direction(DirectionQuantizer quantizer, float angle, float distance) {
+        quantize(quantizer, angle, distance);
+        return quantizer.getDirection();
+    }
+
+    @Test
+    public void fourWays_matchesLegacyDirections() {
+        DirectionQuantizer quantizer = new DirectionQuantizer();
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, direction(quantizer, 10, 1));
+        assertEquals(JoystickEngine.DIRECTION_UP, direction(quantizer, 80, 1));
+        assertEquals(JoystickEngine.DIRECTION_LEFT, direction(quantizer, 190, 1));
+        assertEquals(JoystickEngine.DIRECTION_DOWN, direction(quantizer, 300, 1));
+        assertEquals(3, quantizer.getSector());
+
+        // exactly on the diagonal the previous direction is kept
+        quantizer.quantize(10, -10, 1, 45);
+        assertEquals(JoystickEngine.DIRECTION_DOWN, quantizer.getDirection());
+    }
+
+    @Test
+    public void eightAndSixteenWays_sectorIsSeparateFromDirection() {
+        DirectionQuantizer eight = new DirectionQuantizer(8, 0, 0);
+        assertEquals(0, quantize(eight, 5, 1));
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, eight.getDirection());
+        assertEquals(1, quantize(eight, 40, 1));
+        assertEquals(7, quantize(eight, 320, 1));
+
+        DirectionQuantizer sixteen = new DirectionQuantizer(16, 0, 0);
+        assertEquals(0, quantize(sixteen, 355, 1));
+        assertEquals(1, quantize(sixteen, 20, 1));
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, sixteen.getDirection());
+        assertEquals(3, quantize(sixteen, 70, 1));
+        assertEquals(JoystickEngine.DIRECTION_UP, sixteen.getDirection());
+        assertEquals(15, quantize(sixteen, 335, 1));
+    }
+
+    @Test
+    public void moreWays_directionStaysInTheMainFour() {
+        DirectionQuantizer[] quantizers = {new DirectionQuantizer(8, 0, 0), new DirectionQuantizer(16, 0, 0)};
+        for (DirectionQuantizer quantizer : quantizers) {
+            for (int angle = 0; angle < 360; angle += 3) {
+                int direction = direction(quantizer, angle, 1);
+                assertTrue(direction >= JoystickEngine.DIRECTION_LEFT && direction <= JoystickEngine.DIRECTION_DOWN);
+            }
+        }
+    }
+
+    @Test
+    public void diagonalSector_keepsTheNextMainDirection() {
+        DirectionQuantizer quantizer = new DirectionQuantizer(8, 0, 0);
+        assertEquals(JoystickEngine.DIRECTION_UP, direction(quantizer, 85, 1));
+
+        // up-right diagonal keeps up, and then right is reached
+        assertEquals(JoystickEngine.DIRECTION_UP, direction(quantizer, 40, 1));
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, direction(quantizer, 10, 1));
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, direction(quantizer, 50, 1));
+    }
+
+    @Test
+    public void hysteresis_keepsSectorNearBoundary() {
+        DirectionQuantizer quantizer = new DirectionQuantizer(8, 5, 0);
+        assertEquals(0, quantize(quantizer, 20, 1));
+
+        // jitter around the 22.5 degree boundary does not change the sector
+        assertEquals(0, quantize(quantizer, 24, 1));
+        assertEquals(0, quantize(quantizer, 21, 1));
+        assertEquals(0, quantize(quantizer, 27, 1));
+
+        // far enough past the boundary
+        assertEquals(1, quantize(quantizer, 28, 1));
+        assertEquals(1, quantize(quantizer, 20, 1));
+    }
+
+    @Test
+    public void deadZone_isCenter() {
+        DirectionQuantizer quantizer = new DirectionQuantizer(8, 0, 0.2f);
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, quantize(quantizer, 90, 0.1f));
+        assertEquals(JoystickEngine.DIRECTION_CENTER, quantizer.getDirection());
+        assertEquals(2, quantize(quantizer, 90, 0.3f));
+        assertEquals(JoystickEngine.DIRECTION_UP, quantizer.getDirection());
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, quantize(quantizer, 90, 0.1f));
+    }
+
+    @Test
+    public void deadZone_hasHysteresisAtTheEdge() {
+        DirectionQuantizer quantizer = new DirectionQuantizer(8, 0, 0.2f);
+
+        // jitter just outside the edge does not leave the center
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, quantize(quantizer, 90, 0.21f));
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, quantize(quantizer, 90, 0.19f));
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, quantize(quantizer, 90, 0.24f));
+
+        // far enough past the edge, and then jitter just outside it keeps the sector
+        assertEquals(2, quantize(quantizer, 90, 0.26f));
+        assertEquals(2, quantize(quantizer, 90, 0.21f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidWays_throws() {
+        new DirectionQuantizer(6, 0, 0);
+    }
+}
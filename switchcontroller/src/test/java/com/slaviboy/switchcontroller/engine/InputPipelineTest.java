@@ -0,0 +1,130 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the input pipeline and its stages, that runs on a plain JVM.
+ */
+public class InputPipelineTest {
+
+    @Test
+    public void noStages_normalizesAndClampsToTheUnitCircle() {
+        InputPipeline pipeline = new InputPipeline();
+        pipeline.process(30, -40, 100, 0);
+        assertEquals(0.3f, pipeline.getX(), 1e-6f);
+        assertEquals(-0.4f, pipeline.getY(), 1e-6f);
+        assertEquals(0.5f, pipeline.getMagnitude(), 1e-6f);
+
+        pipeline.process(300, -400, 100, 0);
+        assertEquals(0.6f, pipeline.getX(), 1e-6f);
+        assertEquals(-0.8f, pipeline.getY(), 1e-6f);
+        assertEquals(1, pipeline.getMagnitude(), 1e-6f);
+    }
+
+    @Test
+    public void radialDeadZone_rescalesTheMagnitude() {
+        InputPipeline pipeline = new InputPipeline(new DeadZone(DeadZone.RADIAL, 0.2f, 0.8f));
+        pipeline.process(10, 10, 100, 0);
+        assertEquals(0, pipeline.getMagnitude(), 0);
+
+        // halfway between the edges, with the same direction
+        pipeline.process(0, 50, 100, 0);
+        assertEquals(0.5f, pipeline.getMagnitude(), 1e-6f);
+        assertEquals(0, pipeline.getX(), 0);
+        assertEquals(0.5f, pipeline.getY(), 1e-6f);
+
+        pipeline.process(-90, 0, 100, 0);
+        assertEquals(-1, pipeline.getX(), 1e-6f);
+    }
+
+    @Test
+    public void axialDeadZone_snapsToTheAxis() {
+        InputPipeline pipeline = new InputPipeline(new DeadZone(DeadZone.AXIAL, 0.2f, 1));
+        pipeline.process(60, 10, 100, 0);
+        assertEquals(0.5f, pipeline.getX(), 1e-6f);
+        assertEquals(0, pipeline.getY(), 0);
+    }
+
+    @Test
+    public void responseCurve_usesTheLookupTable() {
+        ResponseCurve curve = ResponseCurve.exponential(2);
+        for (float magnitude = 0; magnitude <= 1; magnitude += 0.013f) {
+            assertEquals(magnitude * magnitude, curve.map(magnitude), 1e-4f);
+        }
+        assertEquals(0.25f, ResponseCurve.linear().map(0.25f), 1e-6f);
+
+        InputPipeline pipeline = new InputPipeline(curve);
+        pipeline.process(-50, 0, 100, 0);
+        assertEquals(-0.25f, pipeline.getX(), 1e-4f);
+    }
+
+    @Test
+    public void exponentialFilter_movesPartOfTheWay() {
+        InputPipeline pipeline = new InputPipeline(new ExponentialFilter(0.25f));
+        pipeline.process(0, 0, 100, 0);
+        pipeline.process(100, 0, 100, 8);
+        assertEquals(0.25f, pipeline.getX(), 1e-6f);
+
+        // after reset the first sample is not smoothed
+        pipeline.reset();
+        assertEquals(0, pipeline.getMagnitude(), 0);
+        pipeline.process(100, 0, 100, 16);
+        assertEquals(1, pipeline.getX(), 1e-6f);
+    }
+
+    @Test
+    public void oneEuroFilter_smoothsSlowMoreThanFast() {
+        InputPipeline slow = new InputPipeline(new OneEuroFilter());
+        InputPipeline fast = new InputPipeline(new OneEuroFilter());
+        slow.process(0, 0, 100, 0);
+        fast.process(0, 0, 100, 0);
+        for (int i = 1; i <= 10; i++) {
+            slow.process(i, 0, 100, i * 8);
+            fast.process(i * 10, 0, 100, i * 8);
+        }
+
+        // relative lag behind the input
+        float slowLag = (0.10f - slow.getX()) / 0.10f;
+        float fastLag = (1 - fast.getX()) / 1;
+        assertTrue("slow lag " + slowLag + ", fast lag " + fastLag, slowLag > fastLag);
+        assertTrue(fast.getX() > 0 && fast.getX() < 1);
+    }
+
+    @Test
+    public void engine_analogAngleMatchesTheFilteredAxes() {
+        JoystickEngine engine = new JoystickEngine();
+        engine.setSize(200, 200, 50, 50, 200, 200);
+        engine.setInputPipeline(new InputPipeline(new ExponentialFilter(0.5f)));
+
+        // the filtered output lags behind the finger, that moved from right to up
+        engine.move(100 + 80, 100, 0);
+        assertEquals(0, engine.getAnalogAngle(), 1e-3f);
+        engine.move(100, 100 - 80, 8);
+        assertEquals(90, engine.getAngle(), 1e-3f);
+        assertEquals(45, engine.getAnalogAngle(), 1e-3f);
+        double angleRad = Math.toRadians(engine.getAnalogAngle());
+        assertEquals(engine.getAnalogX(), engine.getMagnitude() * Math.cos(angleRad), 1e-5f);
+        assertEquals(engine.getAnalogY(), -engine.getMagnitude() * Math.sin(angleRad), 1e-5f);
+
+        // without stages that turn the output, the finger angle is used
+        engine.setInputPipeline(new InputPipeline(new DeadZone(DeadZone.RADIAL, 0.1f, 1)));
+        engine.move(100 + 30, 100 + 40, 16);
+        assertEquals(engine.getAngle(), engine.getAnalogAngle(), 0);
+    }
+
+        @Test
+    public void engine_publishesTheAnalogOutput() {
+        JoystickEngine engine = new JoystickEngine();
+        engine.setSize(200, 200, 50, 50, 200, 200);
+        engine.setInputPipeline(new InputPipeline(new DeadZone(DeadZone.RADIAL, 0.5f, 1)));
+        engine.move(100 + 75, 100, 0);
+        assertEquals(0.5f, engine.getAnalogX(), 1e-6f);
+        assertEquals(0.5f, engine.getMagnitude(), 1e-6f);
+
+        engine.release();
+        assertEquals(0, engine.getAnalogX(), 0);
+        assertEquals(0, engine.getMagnitude(), 0);
+    }
+}
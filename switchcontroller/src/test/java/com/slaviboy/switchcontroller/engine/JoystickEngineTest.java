@@ -0,0 +1,197 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the joystick engine, that runs on a plain JVM.
+ */
+public class JoystickEngineTest {
+
+    private static final float DELTA = 0.001f;
+
+    private JoystickEngine engine;
+
+    @Before
+    public void setUp() {
+
+        // background 100x100 and foreground 50x50 in a 150x150 parent
+        engine = new JoystickEngine();
+        engine.setSize(100, 100, 50, 50, 150, 150);
+    }
+
+    @Test
+    public void setSize_computesCenterAndMiddle() {
+        assertEquals(75, engine.getCenterX(), DELTA);
+        assertEquals(75, engine.getCenterY(), DELTA);
+        assertEquals(50, engine.getMinBgHalf(), DELTA);
+        assertEquals(25, engine.getMinFgHalf(), DELTA);
+        assertEquals(50, engine.getKnobX(), DELTA);
+        assertEquals(50, engine.getKnobY(), DELTA);
+    }
+
+    @Test
+    public void isInside_usesBackgroundAndForegroundRadius() {
+        assertTrue(engine.isInside(75 + 74, 75));
+        assertFalse(engine.isInside(75 + 76, 75));
+
+        engine.setKeepInside(true);
+        assertTrue(engine.isInside(75 + 49, 75));
+        assertFalse(engine.isInside(75 + 51, 75));
+    }
+
+    @Test
+    public void move_insideBackground_movesFreely() {
+        assertTrue(engine.move(75 + 10, 75 - 20));
+        assertEquals(60, engine.getKnobX(), DELTA);
+        assertEquals(30, engine.getKnobY(), DELTA);
+        assertEquals(Math.sqrt(500), engine.getDistance(), DELTA);
+        assertEquals(JoystickEngine.DIRECTION_UP, engine.getDirection());
+    }
+
+    @Test
+    public void move_outsideBackground_clampsToRim() {
+        engine.move(75 + 300, 75 + 400);
+        assertEquals(500, engine.getDistance(), DELTA);
+
+        // knob center is 50px from the center on the same line
+        assertEquals(75 + 30 - 25, engine.getKnobX(), DELTA);
+        assertEquals(75 + 40 - 25, engine.getKnobY(), DELTA);
+        assertEquals(JoystickEngine.DIRECTION_DOWN, engine.getDirection());
+    }
+
+    @Test
+    public void move_sticky_sticksToDirection() {
+        engine.setSticky(true);
+        engine.move(75 - 100, 75 + 10);
+        assertEquals(JoystickEngine.DIRECTION_LEFT, engine.getDirection());
+        assertEquals(50 - 50, engine.getKnobX(), DELTA);
+        assertEquals(50, engine.getKnobY(), DELTA);
+    }
+
+    @Test
+    public void move_sticky_worksWithEightWays() {
+        engine.setSticky(true);
+        engine.setQuantizer(new DirectionQuantizer(8, 0, 0));
+        engine.move(75 - 100, 75 + 10);
+        assertEquals(JoystickEngine.DIRECTION_LEFT, engine.getDirection());
+        assertEquals(4, engine.getDirectionSector());
+        assertTrue(engine.isDirectionSectorChanged());
+        assertEquals(50 - 50, engine.getKnobX(), DELTA);
+        assertEquals(50, engine.getKnobY(), DELTA);
+
+        engine.release();
+        assertEquals(DirectionQuantizer.SECTOR_CENTER, engine.getDirectionSector());
+        assertTrue(engine.isDirectionSectorChanged());
+    }
+
+    @Test
+    public void move_onDiagonal_keepsPreviousDirection() {
+        engine.move(75 + 20, 75);
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, engine.getDirection());
+        assertFalse(engine.move(75 + 20, 75 + 20));
+        assertEquals(JoystickEngine.DIRECTION_RIGHT, engine.getDirection());
+    }
+
+    @Test
+    public void release_restoresCenter() {
+        engine.move(75 + 20, 75);
+        assertTrue(engine.release());
+        assertEquals(JoystickEngine.DIRECTION_CENTER, engine.getDirection());
+        assertEquals(50, engine.getKnobX(), DELTA);
+        assertEquals(50, engine.getKnobY(), DELTA);
+    }
+
+    @Test
+    public void angleBetween_isCounterClockwiseFromXAxis() {
+        assertEquals(0, JoystickEngine.angleBetween(0, 0, 10, 0), DELTA);
+        assertEquals(90, JoystickEngine.angleBetween(0, 0, 0, -10), DELTA);
+        assertEquals(180, JoystickEngine.angleBetween(0, 0, -10, 0), DELTA);
+        assertEquals(270, JoystickEngine.angleBetween(0, 0, 0, 10), DELTA);
+    }
+
+    @Test
+    public void sector_matchesRoundedAngle() {
+
+        // angles away from the sector boundaries, every degree around the circle
+        for (int degree = 0; degree < 360; degree++) {
+            if (degree % 45 == 22 || degree % 45 == 23) {
+                continue;
+            }
+            double angleRad = Math.toRadians(degree);
+            float deltaX = (float) (100 * Math.cos(angleRad));
+            float deltaY = (float) (-100 * Math.sin(angleRad));
+            int expected = (int) Math.round(degree / 45.0) % 8;
+            assertEquals("angle " + degree, expected, JoystickEngine.sector(deltaX, deltaY));
+        }
+    }
+
+    @Test
+    public void move_computesUnitVectorAndSector() {
+        engine.move(75 + 30, 75 + 40);
+        assertEquals(0.6f, engine.getUnitX(), DELTA);
+        assertEquals(0.8f, engine.getUnitY(), DELTA);
+        assertEquals(7, engine.getSector());
+
+        // the sector is kept after release, so the last facing can be used
+        engine.release();
+        assertEquals(0, engine.getUnitX(), DELTA);
+        assertEquals(0, engine.getUnitY(), DELTA);
+        assertEquals(7, engine.getSector());
+    }
+
+    @Test
+    public void move_computesNormalizedAxes() {
+        engine.move(75 + 15, 75 + 20);
+        assertEquals(0.3f, engine.getAnalogX(), DELTA);
+        assertEquals(0.4f, engine.getAnalogY(), DELTA);
+        assertEquals(0.5f, engine.getMagnitude(), DELTA);
+
+        // the same vector in polar form, with y pointing down
+        double angleRad = Math.toRadians(engine.getAngle());
+        assertEquals(engine.getAnalogX(), engine.getMagnitude() * Math.cos(angleRad), DELTA);
+        assertEquals(engine.getAnalogY(), -engine.getMagnitude() * Math.sin(angleRad), DELTA);
+
+        // clamped to the rim, when the finger is outside the background
+        engine.move(75 + 300, 75);
+        assertEquals(1, engine.getAnalogX(), DELTA);
+        assertEquals(1, engine.getMagnitude(), DELTA);
+    }
+
+    @Test
+    public void move_doesNotAllocate() {
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // the bean itself may allocate per call, so measure that first
+        circle(engine, 10000);
+        long before = bean.getThreadAllocatedBytes(threadId);
+        long baseline = bean.getThreadAllocatedBytes(threadId) - before;
+
+        before = bean.getThreadAllocatedBytes(threadId);
+        circle(engine, 10000);
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(baseline, allocated);
+    }
+
+    /**
+     * Move the finger in circles, half of the samples are inside the
+     * background and the other half are outside of it.
+     */
+    private static void circle(JoystickEngine engine, int moves) {
+        for (int i = 0; i < moves; i++) {
+            double angle = i * 0.1;
+            float radius = (i % 2 == 0) ? 20 : 200;
+            engine.move(
+                    (float) (75 + Math.cos(angle) * radius),
+                    (float) (75 + Math.sin(angle) * radius));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the knob predictor, that runs on a plain JVM.
+ */
+public class KnobPredictorTest {
+
+    @Test
+    public void constantVelocity_isExtrapolatedToTheHorizon() {
+        KnobPredictor predictor = new KnobPredictor(6, 16);
+
+        // 0.5 px/ms to the right and 0.25 px/ms down, sampled at 125 Hz
+        for (int i = 0; i < 10; i++) {
+            predictor.add(i * 8, i * 4, i * 2);
+        }
+        assertEquals(0.5f, predictor.getVelocityX(), 1e-4f);
+        assertEquals(0.25f, predictor.getVelocityY(), 1e-4f);
+        assertEquals(36 + 8, predictor.getPredictedDeltaX(), 1e-3f);
+        assertEquals(18 + 4, predictor.getPredictedDeltaY(), 1e-3f);
+        assertEquals(JoystickEngine.angleBetween(0, 0, 44, 22), predictor.getPredictedAngle(), 1e-3f);
+        assertEquals((float) Math.sqrt(44 * 44 + 22 * 22), predictor.getPredictedDistance(), 1e-3f);
+    }
+
+    @Test
+    public void restingFinger_isNotExtrapolated() {
+        KnobPredictor predictor = new KnobPredictor();
+        predictor.add(0, 30, -40);
+        assertEquals(30, predictor.getPredictedDeltaX(), 0);
+        assertEquals(50, predictor.getPredictedDistance(), 1e-4f);
+
+        predictor.add(8, 30, -40);
+        predictor.add(16, 30, -40);
+        assertEquals(0, predictor.getVelocityX(), 0);
+        assertEquals(0, predictor.getVelocityY(), 0);
+        assertEquals(-40, predictor.getPredictedDeltaY(), 0);
+    }
+
+    @Test
+    public void noisySamples_haveLessJitterThanLastTwoSamples() {
+        KnobPredictor predictor = new KnobPredictor(8, 16);
+        Random random = new Random(7);
+
+        // finger at rest with one pixel of digitizer noise
+        float maxJitter = 0;
+        for (int i = 0; i < 100; i++) {
+            predictor.add(i * 8, 50 + random.nextFloat() * 2 - 1, 0);
+            if (i >= 8) {
+                maxJitter = Math.max(maxJitter, Math.abs(predictor.getPredictedDeltaX() - 50));
+            }
+        }
+
+        // extrapolating the difference of two samples could move it by 2 * 2 px
+        assertTrue("jitter " + maxJitter, maxJitter < 2);
+    }
+
+    @Test
+    public void oldSamplesAndReset_areIgnored() {
+        KnobPredictor predictor = new KnobPredictor();
+        predictor.add(0, 0, 0);
+        predictor.add(8, 100, 0);
+
+        // the previous samples are older than the maximum age
+        predictor.add(200, 10, 0);
+        assertEquals(0, predictor.getVelocityX(), 0);
+
+        predictor.reset();
+        predictor.add(300, 20, 0);
+        assertEquals(20, predictor.getPredictedDeltaX(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void window_mustHaveTwoSamples() {
+        new KnobPredictor(1, 16);
+    }
+}
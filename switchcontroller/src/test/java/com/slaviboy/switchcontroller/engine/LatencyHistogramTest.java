@@ -0,0 +1,63 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the latency histogram, that runs on a plain JVM.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguousAndPrecise() {
+
+        // each value falls into the bucket, whose range holds it
+        for (long value = 0; value < 1000000; value += 7) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.lowestValueAt(index) <= value);
+            assertTrue(LatencyHistogram.lowestValueAt(index + 1) > value);
+
+            // relative bucket width is at most 1/16
+            long width = LatencyHistogram.lowestValueAt(index + 1) - LatencyHistogram.lowestValueAt(index);
+            assertTrue(width * 16 <= Math.max(16, LatencyHistogram.lowestValueAt(index)));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinBucketPrecision() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(5000, histogram.getMedian(), 5000 / 16);
+        assertEquals(9900, histogram.getP99(), 9900 / 16);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMedian());
+    }
+
+    @Test
+    public void stats_countEventsPerSecond() {
+
+        LatencyStats stats = new LatencyStats();
+        long second = 1000000000L;
+
+        // 120 events during one second, 2 ms after their event time
+        for (int i = 0; i <= 120; i++) {
+            long time = i * second / 120;
+            stats.recordTouch(time, time + 2000000);
+        }
+        assertEquals(120, stats.getEventsPerSecond(), 0.5);
+        assertEquals(2000, stats.getTouchLatency().getMedian(), 2000 / 16);
+    }
+}
@@ -0,0 +1,170 @@
+package com.slaviboy.switchcontroller.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for recording and replaying input traces, the output of
+ * the replayed gesture is compared with golden output, so any change of
+ * the engine math or the pointer capture logic is detected.
+ */
+public class TraceReplayerTest {
+
+    // background 100x100 and foreground 50x50 in a 150x150 parent, center is (75, 75)
+    private static final float CENTER = 75;
+
+    // output of the gesture below, as direction changes (D) and moves (M angle distance)
+    private static final String GOLDEN = "D2 M-0.00,20.00 D3 M71.57,31.62 D1 M161.57,31.62 " +
+            "D4 M255.96,41.23 M306.87,500.00 D0 M306.87,500.00";
+
+    private InputTrace trace;
+
+    @Before
+    public void setUp() {
+
+        // first finger goes down right of the center, moves up, left, down and outside
+        // the rim, second finger goes down and moves but is ignored, then first goes up
+        trace = new InputTrace(64);
+        trace.record(0, InputTrace.ACTION_DOWN, 0, CENTER + 20, CENTER);
+        trace.record(4, InputTrace.ACTION_MOVE, 0, CENTER + 10, CENTER - 30);
+        trace.record(8, InputTrace.ACTION_MOVE, 0, CENTER - 30, CENTER - 10);
+        trace.record(12, InputTrace.ACTION_POINTER_DOWN, 1, CENTER, CENTER);
+        trace.record(16, InputTrace.ACTION_MOVE, 0, CENTER - 10, CENTER + 40);
+        trace.record(16, InputTrace.ACTION_MOVE, 1, CENTER + 40, CENTER, true);
+        trace.record(20, InputTrace.ACTION_MOVE, 0, CENTER + 300, CENTER + 400);
+        trace.record(24, InputTrace.ACTION_POINTER_UP, 1, CENTER + 40, CENTER);
+        trace.record(28, InputTrace.ACTION_UP, 0, CENTER + 300, CENTER + 400);
+    }
+
+    private static String replay(InputTrace trace) {
+
+        JoystickEngine engine = new JoystickEngine();
+        engine.setSize(100, 100, 50, 50, 150, 150);
+        final StringBuilder output = new StringBuilder();
+        new TraceReplayer(engine).replay(trace, new TraceReplayer.Listener() {
+            @Override
+            public void onDirectionChange(int id, int direction, int action) {
+                output.append("D").append(direction).append(' ');
+            }
+
+            @Override
+            public void onMove(int id, double angle, double distance) {
+                output.append(String.format(Locale.US, "M%.2f,%.2f ", angle, distance));
+            }
+        });
+        return output.toString().trim();
+    }
+
+    @Test
+    public void replay_matchesGoldenOutput() {
+        assertEquals(GOLDEN, replay(trace));
+    }
+
+    @Test
+    public void writeAndRead_keepsRecords() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.writeTo(out);
+        assertEquals(12 + trace.size() * InputTrace.RECORD_SIZE, out.size());
+
+        InputTrace copy = InputTrace.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(trace.size(), copy.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(trace.getTime(i), copy.getTime(i));
+            assertEquals(trace.getAction(i), copy.getAction(i));
+            assertEquals(trace.getPointerId(i), copy.getPointerId(i));
+            assertEquals(trace.getX(i), copy.getX(i), 0);
+            assertEquals(trace.getY(i), copy.getY(i), 0);
+            assertEquals(trace.isHistorical(i), copy.isHistorical(i));
+        }
+        assertEquals(GOLDEN, replay(copy));
+    }
+
+    @Test
+    public void replay_followsTheHistoryMode() {
+
+        // one move event with two historical samples (up and left) and the current one on
+        // the diagonal, where the previous direction is kept, the output is the same as the
+        // live controller gives for that event in each history mode
+        InputTrace event = new InputTrace(8);
+        event.record(0, InputTrace.ACTION_DOWN, 0, CENTER + 20, CENTER);
+        event.record(4, InputTrace.ACTION_MOVE, 0, CENTER + 10, CENTER - 30, true);
+        event.record(8, InputTrace.ACTION_MOVE, 0, CENTER - 30, CENTER - 10, true);
+        event.record(12, InputTrace.ACTION_MOVE, 0, CENTER + 20, CENTER + 20);
+        event.record(16, InputTrace.ACTION_UP, 0, CENTER + 20, CENTER + 20);
+
+        assertEquals("D2 M M D0 M", replayDirections(event, TraceReplayer.HISTORY_NONE));
+        assertEquals("D2 M D3 D1 M D0 M", replayDirections(event, TraceReplayer.HISTORY_TRANSITIONS));
+        assertEquals("D2 M D1 M D0 M", replayDirections(event, TraceReplayer.HISTORY_COALESCED));
+    }
+
+    private static String replayDirections(InputTrace trace, int historyMode) {
+
+        JoystickEngine engine = new JoystickEngine();
+        engine.setSize(100, 100, 50, 50, 150, 150);
+        TraceReplayer replayer = new TraceReplayer(engine);
+        replayer.setHistoryMode(historyMode);
+        final StringBuilder output = new StringBuilder();
+        replayer.replay(trace, new TraceReplayer.Listener() {
+            @Override
+            public void onDirectionChange(int id, int direction, int action) {
+                output.append("D").append(direction).append(' ');
+            }
+
+            @Override
+            public void onMove(int id, double angle, double distance) {
+                output.append("M ");
+            }
+        });
+        return output.toString().trim();
+    }
+
+        @Test
+    public void read_rejectsInvalidCount() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.writeTo(out);
+        byte[] bytes = out.toByteArray();
+
+        // count in the header is larger than the records in the stream
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        assertReadFails(truncated);
+
+        // negative count, and count above the maximum
+        bytes[8] = (byte) 0xff;
+        assertReadFails(bytes);
+        bytes[8] = 0x7f;
+        assertReadFails(bytes);
+    }
+
+    private static void assertReadFails(byte[] bytes) {
+        try {
+            InputTrace.readFrom(new ByteArrayInputStream(bytes));
+            fail("Invalid trace was read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+        @Test
+    public void record_overwritesOldestWhenFull() {
+
+        InputTrace ring = new InputTrace(4);
+        for (int i = 0; i < 10; i++) {
+            ring.record(i, InputTrace.ACTION_MOVE, 0, i, -i);
+        }
+        assertEquals(4, ring.size());
+        assertEquals(6, ring.getOverwritten());
+        assertEquals(6, ring.getTime(0));
+        assertEquals(9, ring.getX(3), 0);
+        assertEquals(-9, ring.getY(3), 0);
+    }
+}